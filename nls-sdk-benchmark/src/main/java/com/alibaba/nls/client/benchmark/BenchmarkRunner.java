@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * 单线程微基准:预热后执行多轮,输出每次操作耗时及当前线程分配的字节数的中位数.
+ * 分配统计依赖HotSpot的com.sun.management.ThreadMXBean,不支持时输出-1
+ */
+final class BenchmarkRunner {
+    /**
+     * 被测操作,返回值累加后输出,避免被JIT消除
+     */
+    interface Task {
+        int run();
+    }
+
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int warmup;
+    private final int iterations;
+    private final int rounds;
+    private long sink;
+
+    /**
+     * @param warmup     预热次数
+     * @param iterations 每轮执行次数
+     * @param rounds     轮数
+     */
+    BenchmarkRunner(int warmup, int iterations, int rounds) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.rounds = rounds;
+    }
+
+    /**
+     * 按命令行参数创建:[每轮次数] [轮数],预热次数与每轮次数相同
+     */
+    static BenchmarkRunner fromArgs(String[] args, int defaultIterations) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : defaultIterations;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.println(String.format("java %s,%s,iterations:%d,rounds:%d", System.getProperty("java.version"),
+            System.getProperty("java.vm.name"), iterations, rounds));
+        return new BenchmarkRunner(iterations, iterations, rounds);
+    }
+
+    void run(String name, Task task) {
+        for (int i = 0; i < warmup; i++) {
+            sink += task.run();
+        }
+        double[] nanos = new double[rounds];
+        double[] bytes = new double[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += task.run();
+            }
+            nanos[r] = (double)(System.nanoTime() - start) / iterations;
+            bytes[r] = allocated < 0 ? -1 : (double)(allocatedBytes() - allocated) / iterations;
+        }
+        System.out.println(String.format("%-32s %10.1f ns/op %10.1f B/op", name, median(nanos), median(bytes)));
+    }
+
+    /**
+     * 防止被测结果被优化掉,在所有测试结束后调用
+     */
+    void finish() {
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
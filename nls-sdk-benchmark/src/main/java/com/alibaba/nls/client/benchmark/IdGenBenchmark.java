@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.nls.client.util.IdGen;
+import com.alibaba.nls.client.util.IdGenerator;
+
+/**
+ * task_id/message_id生成:{@link IdGen#RANDOM},{@link IdGen#SECURE}与之前的UUID.randomUUID().toString().replaceAll("-", "")对比.
+ * 先单线程测耗时及分配,再用多个线程同时生成测吞吐.运行前校验生成的id都是合法的UUID v4格式.
+ * <pre>
+ * mvn -Pbenchmark install -DskipTests
+ * mvn -Pbenchmark -pl nls-sdk-benchmark exec:exec -Dbenchmark=com.alibaba.nls.client.benchmark.IdGenBenchmark
+ * </pre>
+ * 多线程的线程数由系统属性threads指定,默认为cpu核数
+ */
+public class IdGenBenchmark {
+    static final IdGenerator UUID_REGEX = new IdGenerator() {
+        @Override
+        public String genId() {
+            return UUID.randomUUID().toString().replaceAll("-", "");
+        }
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] names = {"uuid+replaceAll", "IdGen.SECURE", "IdGen.RANDOM"};
+        IdGenerator[] generators = {UUID_REGEX, IdGen.SECURE, IdGen.RANDOM};
+        for (IdGenerator generator : generators) {
+            verify(generator);
+        }
+        BenchmarkRunner runner = BenchmarkRunner.fromArgs(args, 500000);
+        for (int i = 0; i < generators.length; i++) {
+            final IdGenerator generator = generators[i];
+            runner.run(names[i], new BenchmarkRunner.Task() {
+                @Override
+                public int run() {
+                    return generator.genId().charAt(0);
+                }
+            });
+        }
+        runner.finish();
+
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < generators.length; i++) {
+            System.out.println(String.format("%-32s %10.1f ns/id with %d threads", names[i],
+                concurrent(generators[i], threads, 1000), threads));
+        }
+    }
+
+    /**
+     * 多个线程同时生成millis毫秒,返回平均每个id的耗时(总耗时/总数)
+     */
+    private static double concurrent(final IdGenerator generator, int threads, final long millis)
+        throws InterruptedException {
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long deadline = System.nanoTime() + millis * 1000000L;
+                    long count = 0;
+                    while (System.nanoTime() < deadline) {
+                        for (int i = 0; i < 1000; i++) {
+                            generator.genId();
+                        }
+                        count += 1000;
+                    }
+                    total.addAndGet(count);
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return (double)(System.nanoTime() - begin) / total.get();
+    }
+
+    private static void verify(IdGenerator generator) {
+        for (int i = 0; i < 1000; i++) {
+            String id = generator.genId();
+            UUID uuid = UUID.fromString(id.substring(0, 8) + "-" + id.substring(8, 12) + "-" + id.substring(12, 16)
+                + "-" + id.substring(16, 20) + "-" + id.substring(20));
+            if (id.length() != 32 || !id.equals(id.toLowerCase()) || uuid.version() != 4 || uuid.variant() != 2) {
+                throw new IllegalStateException("invalid id:" + id);
+            }
+        }
+    }
+}
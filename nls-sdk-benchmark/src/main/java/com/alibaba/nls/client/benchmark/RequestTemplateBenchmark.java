@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.nls.client.protocol.Constant;
+import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.util.IdGen;
+
+/**
+ * 开始及结束指令的序列化:按模板拼接({@link SpeechReqProtocol#serialize()}及stop指令)与直接用fastjson序列化整个请求对比.
+ * 每次操作模拟一个会话,生成新的task_id,序列化一条StartRecognition和一条StopRecognition.
+ * 运行前先校验两种方式的输出解析后相同.
+ * <pre>
+ * mvn -Pbenchmark install -DskipTests
+ * mvn -Pbenchmark -pl nls-sdk-benchmark exec:exec -Dbenchmark=com.alibaba.nls.client.benchmark.RequestTemplateBenchmark
+ * </pre>
+ */
+public class RequestTemplateBenchmark {
+
+    /**
+     * 与一句话识别相同的请求内容
+     */
+    static class Session extends SpeechReqProtocol {
+        Session() {
+            setAppKey("benchmark-appkey");
+            header.put(Constant.PROP_NAMESPACE, Constant.VALUE_NAMESPACE_ASR);
+            header.put(Constant.PROP_NAME, Constant.VALUE_NAME_ASR_START);
+            payload = new HashMap<String, Object>();
+            payload.put(Constant.PROP_ASR_FORMAT, "pcm");
+            payload.put(Constant.PROP_ASR_SAMPLE_RATE, 16000);
+            payload.put(Constant.PROP_ASR_ENABLE_INTERMEDIATE_RESULT, true);
+            payload.put(Constant.PROP_ASR_ENABLE_PUNCTUATION_PREDICTION, true);
+            payload.put(Constant.PROP_ASR_ENABLE_ITN, false);
+        }
+
+        void newTask() {
+            String taskId = IdGen.genId();
+            header.put(Constant.PROP_MESSAGE_ID, IdGen.genId());
+            header.put(Constant.PROP_TASK_ID, taskId);
+            currentTaskId = taskId;
+        }
+
+        String stop() {
+            return buildCommand(Constant.VALUE_NAMESPACE_ASR, Constant.VALUE_NAME_ASR_STOP);
+        }
+
+        /**
+         * 模板之前的序列化方式
+         */
+        String legacyStart() {
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("header", header);
+            result.put("payload", payload);
+            result.put("context", context);
+            return JSON.toJSONString(result);
+        }
+
+        /**
+         * 模板之前每次stop新建一个请求对象序列化
+         */
+        String legacyStop() {
+            SpeechReqProtocol req = new SpeechReqProtocol();
+            req.setAppKey(getAppKey());
+            req.header.put(Constant.PROP_NAMESPACE, Constant.VALUE_NAMESPACE_ASR);
+            req.header.put(Constant.PROP_NAME, Constant.VALUE_NAME_ASR_STOP);
+            req.header.put(Constant.PROP_TASK_ID, getTaskId());
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("header", req.header);
+            return JSON.toJSONString(result);
+        }
+    }
+
+    public static void main(String[] args) {
+        final Session session = new Session();
+        verify(session);
+        BenchmarkRunner runner = BenchmarkRunner.fromArgs(args, 200000);
+        runner.run("start+stop fastjson", new BenchmarkRunner.Task() {
+            @Override
+            public int run() {
+                session.newTask();
+                return session.legacyStart().length() + session.legacyStop().length();
+            }
+        });
+        runner.run("start+stop template", new BenchmarkRunner.Task() {
+            @Override
+            public int run() {
+                session.newTask();
+                return session.serialize().length() + session.stop().length();
+            }
+        });
+        runner.run("task ids only", new BenchmarkRunner.Task() {
+            @Override
+            public int run() {
+                session.newTask();
+                return session.getTaskId().length();
+            }
+        });
+        runner.finish();
+    }
+
+    private static void verify(Session session) {
+        session.newTask();
+        check(session.legacyStart(), session.serialize());
+        String stop = session.stop();
+        Map<String, Object> header = JSON.parseObject(stop).getJSONObject("header");
+        //两种方式的message_id都是新生成的,不参与比较
+        header.remove(Constant.PROP_MESSAGE_ID);
+        Map<String, Object> legacy = JSON.parseObject(session.legacyStop()).getJSONObject("header");
+        legacy.remove(Constant.PROP_MESSAGE_ID);
+        if (!legacy.equals(header)) {
+            throw new IllegalStateException("stop mismatch:" + stop);
+        }
+    }
+
+    private static void check(String expected, String actual) {
+        if (!JSON.parseObject(expected).equals(JSON.parseObject(actual))) {
+            throw new IllegalStateException("output mismatch,expected:" + expected + ",actual:" + actual);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 离线音频发送调度器:按音频的实际码率从数据源读取并发送,代替每个会话占用一个线程sleep.
+ * 每批数据的发送时间按开始时间及已发送字节数计算,读取及发送的耗时不会累积成速率漂移;
+ * 少量线程即可驱动大量并发的文件回放会话.数据源应为文件,内存等读取不会长时间阻塞的流
+ */
+public class AudioPacer {
+    private static Logger logger = LoggerFactory.getLogger(AudioPacer.class);
+    /**
+     * 连接不可写时的重试间隔,单位毫秒
+     */
+    private static final long RETRY_DELAY_MILLIS = 10;
+    /**
+     * 落后计划超过该时间(如连接长时间不可写)时不再追赶,从当前时间重新计时,单位毫秒
+     */
+    private static final long MAX_LAG_MILLIS = 1000;
+    /**
+     * 除pcm外的压缩格式无法从采样率得到准确码率,按10:1的压缩比估算
+     */
+    private static final int COMPRESSION_RATIO = 10;
+
+    private static volatile AudioPacer defaultPacer;
+
+    private final ScheduledThreadPoolExecutor executor;
+    /**
+     * 未结束的数据源,关闭调度器时使其失败
+     */
+    private final Set<PacedStream> activeStreams = Collections.newSetFromMap(
+        new ConcurrentHashMap<PacedStream, Boolean>());
+
+    /**
+     * 发送端,由会话实现
+     */
+    public interface Sink {
+        /**
+         * 连接是否可以继续写入,返回false时本批数据推迟发送
+         *
+         * @return
+         */
+        boolean isReady();
+
+        /**
+         * 发送一批数据
+         *
+         * @param data
+         * @param offset
+         * @param length
+         * @return false表示会话已结束,不再发送后续数据
+         */
+        boolean write(byte[] data, int offset, int length);
+    }
+
+    /**
+     * 发送速率控制,每批数据发送后调用一次,可根据服务端处理进度动态调整
+     */
+    public interface RateControl {
+        /**
+         * @param sentBytes 已发送的字节数
+         * @return 下一批数据的发送速率,每秒字节数,小于等于0表示不限速
+         */
+        int bytesPerSecond(long sentBytes);
+    }
+
+    /**
+     * @param threads 调度线程数
+     */
+    public AudioPacer(int threads) {
+        executor = new ScheduledThreadPoolExecutor(threads, new DefaultThreadFactory("nls-pacer", true));
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 所有会话共用的默认调度器,线程数由系统属性nls.pacer.threads指定,默认2
+     *
+     * @return
+     */
+    public static AudioPacer getDefault() {
+        if (defaultPacer == null) {
+            synchronized (AudioPacer.class) {
+                if (defaultPacer == null) {
+                    defaultPacer = new AudioPacer(Integer.getInteger("nls.pacer.threads", 2));
+                }
+            }
+        }
+        return defaultPacer;
+    }
+
+    /**
+     * 音频格式及采样率对应的码率,pcm为16bit单声道,其它压缩格式按10:1估算
+     *
+     * @param format     pcm opu opus speex,为null时按pcm
+     * @param sampleRate 8000 16000
+     * @return 每秒字节数
+     */
+    public static int bytesPerSecond(String format, int sampleRate) {
+        int pcm = sampleRate * 2;
+        if (format == null || InputFormatEnum.PCM.getName().equals(format)) {
+            return pcm;
+        }
+        return pcm / COMPRESSION_RATIO;
+    }
+
+    public static int bytesPerSecond(InputFormatEnum format, SampleRateEnum sampleRate) {
+        return bytesPerSecond(format.getName(), sampleRate.value);
+    }
+
+    /**
+     * 提交一个数据源,按指定码率分批读取并写入sink,读取完毕后Future以发送的总字节数成功
+     *
+     * @param source         数据源,发送结束后由调用方关闭
+     * @param batchSize      每批发送的字节数
+     * @param bytesPerSecond 发送速率,小于等于0表示不限速
+     * @param sink
+     * @return 读取或发送出错时失败,可通过cancel提前终止
+     */
+    public Future<Long> submit(InputStream source, int batchSize, int bytesPerSecond, Sink sink) {
+        return submit(source, batchSize, fixedRate(bytesPerSecond), sink);
+    }
+
+    /**
+     * 固定速率
+     *
+     * @param bytesPerSecond 小于等于0表示不限速
+     * @return
+     */
+    public static RateControl fixedRate(final int bytesPerSecond) {
+        return new RateControl() {
+            @Override
+            public int bytesPerSecond(long sentBytes) {
+                return bytesPerSecond;
+            }
+        };
+    }
+
+    /**
+     * 提交一个数据源,按rateControl给出的速率分批读取并写入sink
+     *
+     * @param source      数据源,发送结束后由调用方关闭
+     * @param batchSize   每批发送的字节数
+     * @param rateControl
+     * @param sink
+     * @return 读取完毕后以发送的总字节数成功,读取或发送出错时失败,可通过cancel提前终止
+     * @throws IllegalStateException 调度器已关闭
+     */
+    public Future<Long> submit(InputStream source, int batchSize, RateControl rateControl, Sink sink) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("invalid batchSize:" + batchSize);
+        }
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("audio pacer is shut down");
+        }
+        PacedStream stream = new PacedStream(source, batchSize, rateControl, sink);
+        activeStreams.add(stream);
+        try {
+            executor.execute(stream);
+        } catch (RejectedExecutionException e) {
+            //与shutdown并发时
+            stream.fail(new IllegalStateException("audio pacer is shut down"));
+        }
+        return stream.promise;
+    }
+
+    /**
+     * 正在发送的数据源数量
+     *
+     * @return
+     */
+    public int getActiveStreams() {
+        return activeStreams.size();
+    }
+
+    /**
+     * 关闭调度线程,未发送完的数据源不再发送,其Future以IllegalStateException失败
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        for (PacedStream stream : activeStreams) {
+            stream.fail(new IllegalStateException("audio pacer is shut down"));
+        }
+    }
+
+    private class PacedStream implements Runnable {
+        final InputStream source;
+        final byte[] buffer;
+        final RateControl rateControl;
+        final Sink sink;
+        final Promise<Long> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        /**
+         * 下一批数据的计划发送时间,按每批数据的时长累加,小于0表示从当前时间重新计时
+         */
+        long nextNanos = -1;
+        long totalBytes;
+
+        PacedStream(InputStream source, int batchSize, RateControl rateControl, Sink sink) {
+            this.source = source;
+            this.buffer = new byte[batchSize];
+            this.rateControl = rateControl;
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            if (promise.isDone()) {
+                activeStreams.remove(this);
+                return;
+            }
+            try {
+                if (!sink.isReady()) {
+                    //连接不可写的等待不计入速率,恢复后重新计时
+                    nextNanos = -1;
+                    executor.schedule(this, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                int len = source.read(buffer);
+                if (len <= 0 || !sink.write(buffer, 0, len)) {
+                    finish();
+                    return;
+                }
+                totalBytes += len;
+                int bytesPerSecond = rateControl.bytesPerSecond(totalBytes);
+                if (bytesPerSecond <= 0) {
+                    nextNanos = -1;
+                    executor.execute(this);
+                    return;
+                }
+                long now = System.nanoTime();
+                if (nextNanos < 0) {
+                    nextNanos = now;
+                }
+                nextNanos += len * 1000000000L / bytesPerSecond;
+                long delay = nextNanos - now;
+                if (delay < -TimeUnit.MILLISECONDS.toNanos(MAX_LAG_MILLIS)) {
+                    logger.warn("audio pacing lags behind {} ms,reset pacing", TimeUnit.NANOSECONDS.toMillis(-delay));
+                    nextNanos = -1;
+                    delay = 0;
+                }
+                executor.schedule(this, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        private void finish() {
+            activeStreams.remove(this);
+            promise.trySuccess(totalBytes);
+        }
+
+        void fail(Throwable cause) {
+            activeStreams.remove(this);
+            promise.tryFailure(cause);
+        }
+    }
+}
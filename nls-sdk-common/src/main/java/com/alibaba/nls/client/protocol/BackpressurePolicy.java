@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+/**
+ * 发送音频时连接不可写(待发送数据超过高水位)的处理策略
+ */
+public enum BackpressurePolicy {
+    /**
+     * 不检查,数据直接进入发送队列;连接已断开时数据被丢弃.默认策略,与之前版本行为一致
+     */
+    NONE,
+    /**
+     * 阻塞等待连接恢复可写,超时后抛出异常
+     */
+    BLOCK,
+    /**
+     * 连接不可写或已断开时立即抛出异常
+     */
+    FAIL_FAST,
+    /**
+     * 不阻塞,数据照常进入发送队列,通过WritabilityListener通知调用方暂停或恢复生产数据;连接已断开时抛出异常
+     */
+    CALLBACK
+}
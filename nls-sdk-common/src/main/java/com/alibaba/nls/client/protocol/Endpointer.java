@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+/**
+ * 客户端尾点检测,仅适用于8k/16k 16bit单声道pcm:检测到不短于minSpeechMillis的语音后,
+ * 出现连续trailingSilenceMillis的静音即判定一句话结束.语音判定与{@link VoiceActivityDetector}相同.
+ * 非线程安全,同一时间只能有一个线程发送
+ */
+public class Endpointer {
+    private final SpeechFrameClassifier classifier;
+    private final int frameBytes;
+    private final int trailingSilenceFrames;
+    private int minSpeechFrames = 10;
+
+    private final byte[] pending;
+    private int pendingLength;
+    private long frameIndex;
+    private int speechFrames;
+    private int silentFrames;
+    private long speechEndFrame = -1;
+    private long endpointFrame = -1;
+    private volatile long detectedAt = -1;
+
+    /**
+     * @param sampleRate
+     * @param trailingSilenceMillis 语音之后持续该时长的静音判定为结束,单位毫秒
+     */
+    public Endpointer(SampleRateEnum sampleRate, int trailingSilenceMillis) {
+        this.classifier = new SpeechFrameClassifier(sampleRate);
+        this.frameBytes = classifier.getFrameBytes();
+        this.trailingSilenceFrames = Math.max(trailingSilenceMillis / SpeechFrameClassifier.FRAME_MILLIS, 1);
+        this.pending = new byte[frameBytes];
+    }
+
+    /**
+     * 有效语音的最短累计时长,避免咳嗽,按键音等短促声音触发结束,默认100ms
+     *
+     * @param minSpeechMillis
+     */
+    public void setMinSpeechMillis(int minSpeechMillis) {
+        this.minSpeechFrames = Math.max(minSpeechMillis / SpeechFrameClassifier.FRAME_MILLIS, 1);
+    }
+
+    /**
+     * 调整语音判定阈值,参数含义同{@link VoiceActivityDetector#setThreshold(int, int, int)}
+     *
+     * @param minEnergy
+     * @param speechRatio
+     * @param zcrPermille
+     */
+    public void setThreshold(int minEnergy, int speechRatio, int zcrPermille) {
+        classifier.setThreshold(minEnergy, speechRatio, zcrPermille);
+    }
+
+    /**
+     * 检测一段音频,已判定结束后不再检测
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return 本次检测到结束时返回true,每次{@link #reset()}后最多返回一次
+     */
+    public boolean process(byte[] data, int offset, int length) {
+        if (endpointFrame >= 0) {
+            return false;
+        }
+        int end = offset + length;
+        if (pendingLength > 0) {
+            int n = Math.min(frameBytes - pendingLength, length);
+            System.arraycopy(data, offset, pending, pendingLength, n);
+            pendingLength += n;
+            offset += n;
+            if (pendingLength < frameBytes) {
+                return false;
+            }
+            pendingLength = 0;
+            if (processFrame(pending, 0)) {
+                return true;
+            }
+        }
+        while (end - offset >= frameBytes) {
+            if (processFrame(data, offset)) {
+                return true;
+            }
+            offset += frameBytes;
+        }
+        if (offset < end) {
+            System.arraycopy(data, offset, pending, 0, end - offset);
+            pendingLength = end - offset;
+        }
+        return false;
+    }
+
+    private boolean processFrame(byte[] data, int offset) {
+        frameIndex++;
+        if (classifier.isSpeech(data, offset)) {
+            speechFrames++;
+            silentFrames = 0;
+            speechEndFrame = frameIndex;
+            return false;
+        }
+        if (speechFrames < minSpeechFrames || ++silentFrames < trailingSilenceFrames) {
+            return false;
+        }
+        endpointFrame = frameIndex;
+        detectedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    public boolean isDetected() {
+        return endpointFrame >= 0;
+    }
+
+    /**
+     * 最后一帧语音的结束位置,即从音频开始的时长,单位毫秒,没有语音时为-1
+     *
+     * @return
+     */
+    public long getSpeechEndMillis() {
+        return speechEndFrame < 0 ? -1 : speechEndFrame * SpeechFrameClassifier.FRAME_MILLIS;
+    }
+
+    /**
+     * 判定结束时的音频位置,单位毫秒,与{@link #getSpeechEndMillis()}之差为等待的静音时长,未判定时为-1
+     *
+     * @return
+     */
+    public long getEndpointMillis() {
+        return endpointFrame < 0 ? -1 : endpointFrame * SpeechFrameClassifier.FRAME_MILLIS;
+    }
+
+    /**
+     * 判定结束时的系统时间,单位毫秒,未判定时为-1
+     *
+     * @return
+     */
+    public long getDetectedAt() {
+        return detectedAt;
+    }
+
+    /**
+     * 清空检测状态,用于新的任务
+     */
+    public void reset() {
+        classifier.reset();
+        pendingLength = 0;
+        frameIndex = 0;
+        speechFrames = 0;
+        silentFrames = 0;
+        speechEndFrame = -1;
+        endpointFrame = -1;
+        detectedAt = -1;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.nls.client.util.JsonScanner;
+
+/**
+ * 延迟解析的json对象:未修改前,字符串,数字等简单字段直接从原文读取,访问嵌套对象,遍历或修改时才完整解析为map.
+ * 完整解析的结果及字段类型与fastjson一致
+ */
+class LazyJsonMap extends AbstractMap<String, Object> {
+    private String source;
+    private long range;
+    private Map<String, Object> map;
+    /**
+     * 已查找过的字段及其值的位置,重复访问同一字段时不再扫描原文.不存在的字段同样记录
+     */
+    private final String[] foundKeys = new String[8];
+    private final long[] foundRanges = new long[8];
+    private int foundCount;
+
+    LazyJsonMap(String source, long range) {
+        reset(source, range);
+    }
+
+    /**
+     * 重新绑定到另一段原文,用于复用对象
+     *
+     * @param source
+     * @param range
+     */
+    void reset(String source, long range) {
+        this.source = source;
+        this.range = range;
+        this.map = null;
+        this.foundCount = 0;
+    }
+
+    /**
+     * 未完整解析前查找字段值的位置,优先使用已查找过的结果
+     *
+     * @param key
+     * @return
+     */
+    private long locate(String key) {
+        for (int i = 0; i < foundCount; i++) {
+            if (foundKeys[i].equals(key)) {
+                return foundRanges[i];
+            }
+        }
+        long value = JsonScanner.find(source, range, key);
+        if (foundCount < foundKeys.length) {
+            foundKeys[foundCount] = key;
+            foundRanges[foundCount++] = value;
+        }
+        return value;
+    }
+
+    String getString(String key) {
+        if (map == null) {
+            return JsonScanner.readString(source, locate(key));
+        }
+        Object o = map.get(key);
+        return o == null ? null : o.toString();
+    }
+
+    long getLong(String key, long defaultValue) {
+        if (map == null) {
+            return JsonScanner.readLong(source, locate(key), defaultValue);
+        }
+        return toLong(map.get(key), defaultValue);
+    }
+
+    double getDouble(String key, double defaultValue) {
+        if (map == null) {
+            return JsonScanner.readDouble(source, locate(key), defaultValue);
+        }
+        return toDouble(map.get(key), defaultValue);
+    }
+
+    /**
+     * 字段值的json原文,用于直接反序列化嵌套对象或数组
+     *
+     * @param key
+     * @return
+     */
+    String getRaw(String key) {
+        if (map == null) {
+            long value = locate(key);
+            if (JsonScanner.isNull(source, value)) {
+                return null;
+            }
+            return source.substring(JsonScanner.start(value), JsonScanner.end(value));
+        }
+        Object o = map.get(key);
+        return o == null ? null : JSON.toJSONString(o);
+    }
+
+    static long toLong(Object o, long defaultValue) {
+        if (o == null) {
+            return defaultValue;
+        }
+        if (o instanceof Number) {
+            return ((Number)o).longValue();
+        }
+        return Long.parseLong(o.toString());
+    }
+
+    static double toDouble(Object o, double defaultValue) {
+        if (o == null) {
+            return defaultValue;
+        }
+        if (o instanceof Number) {
+            return ((Number)o).doubleValue();
+        }
+        return Double.parseDouble(o.toString());
+    }
+
+    Map<String, Object> map() {
+        if (map == null) {
+            if (range == JsonScanner.NOT_FOUND || JsonScanner.type(source, range) != '{') {
+                map = new HashMap<String, Object>();
+            } else {
+                map = JSON.parseObject(source.substring(JsonScanner.start(range), JsonScanner.end(range)));
+            }
+            source = null;
+            foundCount = 0;
+        }
+        return map;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (map == null && key instanceof String) {
+            long value = locate((String)key);
+            if (value == JsonScanner.NOT_FOUND) {
+                return null;
+            }
+            char type = JsonScanner.type(source, value);
+            if (type != '{' && type != '[') {
+                return JsonScanner.readScalar(source, value);
+            }
+        }
+        return map().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (map == null && key instanceof String) {
+            return locate((String)key) != JsonScanner.NOT_FOUND;
+        }
+        return map().containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return map().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return map().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        map().clear();
+    }
+
+    @Override
+    public int size() {
+        return map().size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return map().entrySet();
+    }
+}
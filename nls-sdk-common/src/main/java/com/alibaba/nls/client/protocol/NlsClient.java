@@ -16,10 +16,16 @@
 
 package com.alibaba.nls.client.protocol;
 
+import java.util.concurrent.Executor;
+
+import com.alibaba.nls.client.transport.CallbackDispatcher;
 import com.alibaba.nls.client.transport.Connection;
 import com.alibaba.nls.client.transport.ConnectionListener;
+import com.alibaba.nls.client.transport.RetryPolicy;
 import com.alibaba.nls.client.transport.netty4.NettyWebSocketClient;
 
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +78,41 @@ public class NlsClient {
         }
     }
 
+    /**
+     * 传入accessToken,根据传入url访问指定环境的服务,并指定网络传输层实现
+     *
+     * @param url
+     * @param token
+     * @param transport auto,nio或epoll,epoll不可用时退回nio.未指定时由系统属性nls.ws.transport决定,默认auto
+     */
+    public NlsClient(String url, String token, String transport) {
+        try {
+            this.token = token;
+            client = new NettyWebSocketClient(url, transport);
+        } catch (Exception e) {
+            logger.error("fail to create NlsClient", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 传入accessToken,根据传入url访问指定环境的服务,并使用外部的EventLoopGroup.
+     * 多个NlsClient可共享同一个group,避免io线程数随client数量增长;group由调用方负责关闭,{@link #shutdown()}不会关闭它
+     *
+     * @param url
+     * @param token
+     * @param group 如NettyTransport.select("auto").newEventLoopGroup(4, "nls-io"),只支持nio或epoll的实现
+     */
+    public NlsClient(String url, String token, EventLoopGroup group) {
+        try {
+            this.token = token;
+            client = new NettyWebSocketClient(url, group);
+        } catch (Exception e) {
+            logger.error("fail to create NlsClient", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * 更新token.token有有效期,过了有效期需要设置新的token
      *
@@ -79,42 +120,136 @@ public class NlsClient {
      */
     public void setToken(String token) {
         this.token = token;
+        if (client != null) {
+            client.resetPoolToken(token);
+        }
+    }
+
+    /**
+     * 开启连接池:后台预先建立并完成websocket升级的连接,创建会话时直接取用,省去建连耗时.
+     * 仅使用当前client的token建立连接,指定其它token的会话仍然实时建连
+     *
+     * @param minIdle       最少空闲连接数
+     * @param maxTotal      连接池维护的最大连接数,包括已被会话使用但未关闭的连接
+     * @param maxIdleMillis 空闲连接的最长保留时间,单位毫秒,小于等于0表示不限制
+     */
+    public void enableConnectionPool(int minIdle, int maxTotal, long maxIdleMillis) {
+        client.enablePool(token, minIdle, maxTotal, maxIdleMillis, DEFAULT_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * 开启出站写合并:音频帧不再逐帧flush,而是在延迟预算或字节阈值内合并发出,以较小的延迟换取更少的系统调用,
+     * 适用于单机大量并发会话的场景.对之后新建的连接生效,也可通过系统属性nls.ws.coalesce.delay,
+     * nls.ws.coalesce.flushBytes,nls.ws.coalesce.frameSize配置
+     *
+     * @param maxDelayMillis 音频帧最多延迟多久发出,单位毫秒,小于等于0表示关闭
+     * @param flushBytes     累计未发出的字节数达到该值时立即发出
+     * @param mergeFrameSize 将连续的小音频帧合并为该大小的二进制帧,小于等于0表示不合并.仅适用于pcm等可任意切分的格式
+     */
+    public void setWriteCoalescing(long maxDelayMillis, int flushBytes, int mergeFrameSize) {
+        client.setWriteCoalescing(maxDelayMillis, flushBytes, mergeFrameSize);
+    }
+
+    /**
+     * 设置写缓冲水位:待发送数据超过高水位时连接变为不可写,回落到低水位以下时恢复.
+     * 会话发送音频时按{@link BackpressurePolicy}处理不可写的情况.对之后新建的连接生效,
+     * 也可通过系统属性nls.ws.writeBuffer.low,nls.ws.writeBuffer.high配置,默认32K/64K
+     *
+     * @param low  低水位,单位字节
+     * @param high 高水位,单位字节
+     */
+    public void setWriteBufferWaterMark(int low, int high) {
+        client.setWriteBufferWaterMark(low, high);
     }
 
+    /**
+     * 开启心跳:连接空闲时发送ping,超时未收到pong则判定连接已被nat或负载均衡静默断开并关闭,
+     * 连接池中失效的连接会被剔除并补建.对之后新建的连接生效,
+     * 也可通过系统属性nls.ws.keepalive.interval,nls.ws.keepalive.timeout配置
+     *
+     * @param intervalMillis    连接在该时间内没有收到数据时发送ping,单位毫秒,小于等于0表示关闭
+     * @param pongTimeoutMillis 等待pong的超时时间,单位毫秒
+     */
+    public void setKeepAlive(long intervalMillis, long pongTimeoutMillis) {
+        client.setKeepAlive(intervalMillis, pongTimeoutMillis);
+    }
+
+    /**
+     * 设置执行listener回调的线程池.默认回调直接在netty的io线程中执行,回调中的耗时操作(如写数据库)会阻塞同一io线程上的其它连接;
+     * 设置后回调交给该线程池执行,同一连接的回调仍严格按顺序串行执行.对之后建立的连接生效,
+     * 也可通过系统属性nls.ws.callback.threads指定线程数由sdk创建线程池
+     *
+     * @param executor 由调用方负责关闭,为null时恢复在io线程中执行
+     */
+    public void setCallbackExecutor(Executor executor) {
+        client.setCallbackExecutor(executor);
+    }
+
+    /**
+     * 获取回调分发的统计,包括排队深度及分发延迟
+     *
+     * @return 未设置回调线程池时返回null
+     */
+    public CallbackDispatcher getCallbackDispatcher() {
+        return client.getCallbackDispatcher();
+    }
+
+    /**
+     * 设置建连重试策略,默认最多尝试3次,指数退避加随机抖动,鉴权失败等不可恢复的错误不重试.
+     * 传入{@link RetryPolicy#NONE}或null表示不重试
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        client.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * 关闭连接池
+     */
+    public void disableConnectionPool() {
+        client.disablePool();
+    }
+
+    /**
+     * 建立连接,失败时按{@link RetryPolicy}重试,重试在io线程的定时器上进行,调用线程只等待最终结果
+     *
+     * @param listener
+     * @return
+     * @throws Exception
+     */
     public Connection connect(ConnectionListener listener) throws Exception {
-        for (int i = 0; i < 3; i++) {
-            try {
-                return client.connect(token, listener, DEFAULT_CONNECTION_TIMEOUT);
-            } catch (Exception e) {
-                if (i == 2) {
-                    logger.error("failed to connect to server after 3 tries,error msg is :{}", e.getMessage());
-                    throw e;
-                }
-                Thread.sleep(100);
-                logger.warn("failed to connect to server the {} time:{} ,try again ", i, e.getMessage());
-            }
-        }
-        return null;
+        return client.connect(token, listener, DEFAULT_CONNECTION_TIMEOUT);
     }
 
     public Connection connect(String accessToken,ConnectionListener listener) throws Exception {
-        for (int i = 0; i < 3; i++) {
-            try {
-                return client.connect(accessToken, listener, DEFAULT_CONNECTION_TIMEOUT);
-            } catch (Exception e) {
-                if (i == 2) {
-                    logger.error("failed to connect to server after 3 tries,error msg is :{}", e.getMessage());
-                    throw e;
-                }
-                Thread.sleep(100);
-                logger.warn("failed to connect to server the {} time:{} ,try again ", i, e.getMessage());
-            }
-        }
-        return null;
+        return client.connect(accessToken, listener, DEFAULT_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * 异步建立连接,不阻塞调用线程.可在返回的Future上添加回调(addListener),也可以同步等待(sync/get).
+     * 开启连接池时优先使用池中的连接
+     *
+     * @param listener
+     * @return
+     */
+    public Future<Connection> connectAsync(ConnectionListener listener) {
+        return client.connectAsync(token, listener, DEFAULT_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * 使用指定token异步建立连接,不阻塞调用线程
+     *
+     * @param accessToken
+     * @param listener
+     * @return
+     */
+    public Future<Connection> connectAsync(String accessToken, ConnectionListener listener) {
+        return client.connectAsync(accessToken, listener, DEFAULT_CONNECTION_TIMEOUT);
     }
 
     /**
-     * 在应用的最后调用此方法,释放资源
+     * 在应用的最后调用此方法,释放资源.外部传入的EventLoopGroup不会被关闭
      */
     public void shutdown() {
         client.shutdown();
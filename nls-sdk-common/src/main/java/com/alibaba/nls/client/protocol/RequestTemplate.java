@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+
+/**
+ * 请求消息模板:header中除message_id,task_id外的字段预先序列化,发送时只拼接id.
+ * 只含字符串,数字,布尔等简单值的payload按内容缓存序列化结果,相同配置的会话共用.
+ * 输出与fastjson序列化整个请求得到的json等价
+ */
+class RequestTemplate {
+    /**
+     * 模板及payload缓存的最大条数,超过时清空重建
+     */
+    private static final int MAX_CACHED = 256;
+
+    private static final Map<Map<String, String>, RequestTemplate> TEMPLATES
+        = new ConcurrentHashMap<Map<String, String>, RequestTemplate>();
+    private static final Map<Map<String, Object>, String> PAYLOADS = new ConcurrentHashMap<Map<String, Object>, String>();
+
+    private final Map<String, String> fields;
+    private final String prefix;
+    private final boolean empty;
+
+    private RequestTemplate(Map<String, String> fields) {
+        this.fields = fields;
+        StringBuilder sb = new StringBuilder("{\"header\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(JSON.toJSONString(entry.getKey())).append(':').append(JSON.toJSONString(entry.getValue()));
+        }
+        this.prefix = sb.toString();
+        this.empty = first;
+    }
+
+    /**
+     * 获取header对应的模板,header中的message_id及task_id不计入模板
+     *
+     * @param header
+     * @return
+     */
+    static RequestTemplate of(Map<String, String> header) {
+        Map<String, String> fields = new HashMap<String, String>(header);
+        fields.remove(Constant.PROP_MESSAGE_ID);
+        fields.remove(Constant.PROP_TASK_ID);
+        return lookup(fields);
+    }
+
+    /**
+     * 获取只有header的控制指令(如stop)对应的模板
+     *
+     * @param appKey
+     * @param namespace
+     * @param name
+     * @return
+     */
+    static RequestTemplate of(String appKey, String namespace, String name) {
+        Map<String, String> fields = new HashMap<String, String>(4);
+        fields.put(Constant.PROP_APP_KEY, appKey);
+        fields.put(Constant.PROP_NAMESPACE, namespace);
+        fields.put(Constant.PROP_NAME, name);
+        return lookup(fields);
+    }
+
+    private static RequestTemplate lookup(Map<String, String> fields) {
+        RequestTemplate template = TEMPLATES.get(fields);
+        if (template == null) {
+            if (TEMPLATES.size() >= MAX_CACHED) {
+                TEMPLATES.clear();
+            }
+            template = new RequestTemplate(fields);
+            TEMPLATES.put(fields, template);
+        }
+        return template;
+    }
+
+    /**
+     * header中除message_id,task_id外的字段是否与模板一致,不一致时需要重新获取模板
+     *
+     * @param header
+     * @return
+     */
+    boolean matches(Map<String, String> header) {
+        int count = 0;
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            String key = entry.getKey();
+            if (Constant.PROP_MESSAGE_ID.equals(key) || Constant.PROP_TASK_ID.equals(key)) {
+                continue;
+            }
+            String expect = fields.get(key);
+            if (expect == null ? entry.getValue() != null || !fields.containsKey(key) : !expect.equals(
+                entry.getValue())) {
+                return false;
+            }
+            count++;
+        }
+        return count == fields.size();
+    }
+
+    /**
+     * 生成只有header的消息
+     *
+     * @param messageId
+     * @param taskId
+     * @return
+     */
+    String render(String messageId, String taskId) {
+        SerializeWriter out = new SerializeWriter();
+        try {
+            appendHeader(out, messageId, taskId);
+            out.write('}');
+            return out.toString();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 生成带payload及context的消息
+     *
+     * @param messageId
+     * @param taskId
+     * @param payload
+     * @param context
+     * @return
+     */
+    String render(String messageId, String taskId, Map<String, Object> payload, Map<String, Object> context) {
+        String payloadJson = serializePayload(payload);
+        //SerializeWriter使用线程内复用的缓冲区,只在最后生成一次字符串
+        SerializeWriter out = new SerializeWriter();
+        try {
+            appendHeader(out, messageId, taskId);
+            out.write(",\"payload\":");
+            out.write(payloadJson);
+            out.write(",\"context\":");
+            new JSONSerializer(out).write(context);
+            out.write('}');
+            return out.toString();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void appendHeader(SerializeWriter out, String messageId, String taskId) {
+        out.write(prefix);
+        boolean first = empty;
+        if (messageId != null) {
+            out.write(first ? "\"" : ",\"");
+            out.write(Constant.PROP_MESSAGE_ID);
+            out.write("\":");
+            appendString(out, messageId);
+            first = false;
+        }
+        if (taskId != null) {
+            out.write(first ? "\"" : ",\"");
+            out.write(Constant.PROP_TASK_ID);
+            out.write("\":");
+            appendString(out, taskId);
+        }
+        out.write('}');
+    }
+
+    /**
+     * id通常只含字母数字,直接拼接;含其它字符时按json转义
+     */
+    private static void appendString(SerializeWriter out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '-' || c == '_')) {
+                out.writeString(value);
+                return;
+            }
+        }
+        out.write('"');
+        out.write(value);
+        out.write('"');
+    }
+
+    private static String serializePayload(Map<String, Object> payload) {
+        if (!isSimple(payload)) {
+            return JSON.toJSONString(payload);
+        }
+        String json = PAYLOADS.get(payload);
+        if (json == null) {
+            if (PAYLOADS.size() >= MAX_CACHED) {
+                PAYLOADS.clear();
+            }
+            //以副本为key,避免调用方之后修改payload影响缓存
+            Map<String, Object> key = new HashMap<String, Object>(payload);
+            json = JSON.toJSONString(key);
+            PAYLOADS.put(key, json);
+        }
+        return json;
+    }
+
+    /**
+     * 值都是不可变的简单类型时才能按内容缓存,嵌套的map,list等可能被原地修改
+     */
+    private static boolean isSimple(Map<String, Object> payload) {
+        for (Object value : payload.values()) {
+            if (value != null && !(value instanceof String) && !(value instanceof Integer)
+                && !(value instanceof Long) && !(value instanceof Boolean) && !(value instanceof Double)
+                && !(value instanceof Float) && !(value instanceof Short) && !(value instanceof Byte)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
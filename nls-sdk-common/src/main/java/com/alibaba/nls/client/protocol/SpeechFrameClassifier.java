@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+/**
+ * 16bit单声道pcm帧的语音/静音判定:平均幅度超过噪声基线的speechRatio倍为语音,
+ * 超过2倍且过零率较高(清辅音)也为语音.噪声基线随静音帧快速自适应,随语音帧缓慢上升
+ */
+class SpeechFrameClassifier {
+    /**
+     * 帧长,单位毫秒
+     */
+    static final int FRAME_MILLIS = 10;
+
+    private final int frameBytes;
+    private int minEnergy = 200;
+    private int speechRatio = 3;
+    private int zcrPermille = 250;
+    private int noiseFloor = -1;
+
+    SpeechFrameClassifier(SampleRateEnum sampleRate) {
+        this.frameBytes = sampleRate.value / 1000 * FRAME_MILLIS * 2;
+    }
+
+    int getFrameBytes() {
+        return frameBytes;
+    }
+
+    void setThreshold(int minEnergy, int speechRatio, int zcrPermille) {
+        this.minEnergy = minEnergy;
+        this.speechRatio = speechRatio;
+        this.zcrPermille = zcrPermille;
+    }
+
+    boolean isSpeech(byte[] data, int offset) {
+        int samples = frameBytes / 2;
+        long sum = 0;
+        int crossings = 0;
+        int last = 0;
+        for (int i = offset, end = offset + frameBytes; i < end; i += 2) {
+            int sample = (short)((data[i + 1] << 8) | (data[i] & 0xff));
+            sum += sample < 0 ? -sample : sample;
+            if ((sample ^ last) < 0) {
+                crossings++;
+            }
+            last = sample;
+        }
+        int energy = (int)(sum / samples);
+        if (noiseFloor < 0) {
+            //音频可能以语音开始,初始基线不高于minEnergy的一半
+            noiseFloor = Math.max(Math.min(energy, minEnergy / 2), 1);
+        }
+        boolean speech = energy >= minEnergy && (energy > noiseFloor * speechRatio
+            || energy > noiseFloor * 2 && crossings * 1000 / samples >= zcrPermille);
+        if (!speech) {
+            //噪声基线下降时立即跟随,上升时缓慢跟随
+            noiseFloor = energy < noiseFloor ? energy : noiseFloor + (energy - noiseFloor) / 16;
+            if (noiseFloor < 1) {
+                noiseFloor = 1;
+            }
+        } else {
+            //持续的背景噪声会被误判为语音,语音帧也以很慢的速度抬高基线,真实语音的字间停顿会使基线回落
+            noiseFloor += Math.max((energy - noiseFloor) / 1024, 0);
+        }
+        return speech;
+    }
+
+    void reset() {
+        noiseFloor = -1;
+    }
+}
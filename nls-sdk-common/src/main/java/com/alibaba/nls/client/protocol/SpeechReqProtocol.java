@@ -16,32 +16,107 @@
 
 package com.alibaba.nls.client.protocol;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.transport.Connection;
+import com.alibaba.nls.client.transport.WritabilityListener;
 import com.alibaba.nls.client.util.IdGen;
+import com.alibaba.nls.client.util.OpuEncoder;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CLOSED;
+import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_COMPLETE;
+import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_FAIL;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_INIT;
+import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_SENT;
+import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP_SENT;
 
 /**
  * @author zhishen.ml
  * @date 2017/11/24
  *
- * 语音请求基础协议类
+ * 语音请求基础协议类.
+ * 状态由io线程及用户线程共同修改,只能通过{@link #transitTo(State)}按{@link State#canTransitTo(State)}定义的合法路径原子切换
  */
 public class SpeechReqProtocol {
     static Logger logger = LoggerFactory.getLogger(SpeechReqProtocol.class);
+    private static final AtomicReferenceFieldUpdater<SpeechReqProtocol, State> STATE_UPDATER
+        = AtomicReferenceFieldUpdater.newUpdater(SpeechReqProtocol.class, State.class, "state");
+
     protected String accessToken;
     protected Connection conn;
     protected String currentTaskId;
 
-    protected State state = STATE_INIT;
+    /**
+     * 当前状态,只读,修改使用{@link #transitTo(State)}
+     */
+    protected volatile State state = STATE_INIT;
+    /**
+     * 当前任务收到服务端确认或进入终止状态时完成
+     */
+    private volatile Promise<State> readyPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+    /**
+     * 当前任务进入终止状态时完成
+     */
+    private volatile Promise<State> completionPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+    /**
+     * 当前任务的最终结果,正常结束时为结束消息,失败或连接关闭时为{@link SpeechTaskException}
+     */
+    private volatile Promise<SpeechResProtocol> resultPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+    private volatile SpeechTaskException failure;
+
+    protected BackpressurePolicy backpressurePolicy = BackpressurePolicy.NONE;
+    protected long backpressureTimeoutMillis = 5000;
+    /**
+     * 离线音频发送使用的调度器,为null时使用{@link AudioPacer#getDefault()}
+     */
+    protected AudioPacer audioPacer;
+    /**
+     * 服务端已处理的音频时长,单位毫秒,由返回处理进度的会话(如实时转写)根据结果中的时间更新,小于0表示未知
+     */
+    protected volatile long processedAudioMillis = -1;
+    /**
+     * 上次发送音频的时间,用于提示过长的发送间隔
+     */
+    protected long lastSendTime=-1;
+    /**
+     * 客户端静音检测,为null时发送全部音频
+     */
+    protected VoiceActivityDetector voiceActivityDetector;
+    private final VoiceActivityDetector.Output binaryOutput = new VoiceActivityDetector.Output() {
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            writeAudio(data, offset, length);
+        }
+    };
+    /**
+     * 是否将发送的pcm编码为opu
+     */
+    protected boolean opuEncoding;
+    /**
+     * 开启opu编码时每个任务新建,下一个任务开始或连接关闭时释放.native编码器的状态无法重置,不在任务之间复用
+     */
+    private volatile OpuEncoder opuEncoder;
+    private final OpuEncoder.Output opuOutput = new OpuEncoder.Output() {
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            conn.sendBinary(data, offset, length);
+        }
+    };
 
     /**
      * 状态
@@ -205,6 +280,42 @@ public class SpeechReqProtocol {
 
         int value;
 
+        /**
+         * 是否可以从当前状态切换到next
+         *
+         * @param next
+         * @return
+         */
+        public boolean canTransitTo(State next) {
+            switch (next) {
+                case STATE_CONNECTED:
+                    return this == STATE_INIT;
+                case STATE_REQUEST_SENT:
+                    return this == STATE_CONNECTED || this == STATE_REQUEST_CONFIRMED || this == STATE_COMPLETE;
+                case STATE_REQUEST_CONFIRMED:
+                    return this == STATE_REQUEST_SENT;
+                case STATE_STOP_SENT:
+                    return this == STATE_REQUEST_CONFIRMED;
+                case STATE_COMPLETE:
+                    return this == STATE_REQUEST_SENT || this == STATE_REQUEST_CONFIRMED || this == STATE_STOP_SENT;
+                case STATE_FAIL:
+                    return this != STATE_FAIL && this != STATE_CLOSED;
+                case STATE_CLOSED:
+                    return this != STATE_CLOSED;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * 是否为当前任务的终止状态
+         *
+         * @return
+         */
+        public boolean isTerminal() {
+            return this == STATE_COMPLETE || this == STATE_FAIL || this == STATE_CLOSED;
+        }
+
         public abstract void checkSend();
 
         public abstract void checkStart();
@@ -220,6 +331,8 @@ public class SpeechReqProtocol {
     public Map<String, Object> payload;
     public Map<String, Object> context = new HashMap<String, Object>();
 
+    private RequestTemplate template;
+
     public SpeechReqProtocol() {
         header.put(Constant.PROP_MESSAGE_ID, IdGen.genId());
         SdkInfo sdk = new SdkInfo();
@@ -227,6 +340,41 @@ public class SpeechReqProtocol {
         context.put(Constant.PROP_CONTEXT_SDK, sdk);
     }
 
+    /**
+     * 由已建立的连接创建会话,见{@link #createAsync(Future, SessionFactory)}
+     */
+    protected interface SessionFactory<T extends SpeechReqProtocol> {
+        T create(Connection conn);
+    }
+
+    /**
+     * 连接建立后由factory创建会话,供各会话的createAsync使用
+     *
+     * @param connectFuture 建连结果
+     * @param factory
+     * @return 建连或创建会话失败时以对应异常失败
+     */
+    protected static <T extends SpeechReqProtocol> Future<T> createAsync(Future<Connection> connectFuture,
+        final SessionFactory<T> factory) {
+        final Promise<T> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        connectFuture.addListener(new GenericFutureListener<Future<Connection>>() {
+            @Override
+            public void operationComplete(Future<Connection> future) {
+                if (!future.isSuccess()) {
+                    promise.setFailure(future.cause());
+                    return;
+                }
+                try {
+                    promise.setSuccess(factory.create(future.getNow()));
+                } catch (RuntimeException e) {
+                    future.getNow().close();
+                    promise.setFailure(e);
+                }
+            }
+        });
+        return promise;
+    }
+
     /**
      * 获取appkey
      * @return
@@ -278,13 +426,478 @@ public class SpeechReqProtocol {
     }
 
     public String serialize() {
-        Map<String, Object> result = new HashMap<String, Object>();
-        result.put("header", header);
-        if (payload != null) {
-            result.put("payload", payload);
-            result.put("context", context);
+        if (template == null || !template.matches(header)) {
+            template = RequestTemplate.of(header);
+        }
+        String messageId = header.get(Constant.PROP_MESSAGE_ID);
+        String taskId = header.get(Constant.PROP_TASK_ID);
+        if (payload == null) {
+            return template.render(messageId, taskId);
+        }
+        return template.render(messageId, taskId, payload, context);
+    }
+
+    /**
+     * 生成当前任务的控制指令,如stop等只有header的消息,不变部分按appkey,namespace,name缓存
+     *
+     * @param namespace
+     * @param name
+     * @return
+     */
+    protected String buildCommand(String namespace, String name) {
+        return RequestTemplate.of(getAppKey(), namespace, name).render(IdGen.genId(), currentTaskId);
+    }
+
+    /**
+     * 设置发送音频时连接不可写的处理策略,默认{@link BackpressurePolicy#NONE}
+     *
+     * @param policy
+     * @param timeoutMillis {@link BackpressurePolicy#BLOCK}时最长等待时间,单位毫秒
+     */
+    public void setBackpressurePolicy(BackpressurePolicy policy, long timeoutMillis) {
+        this.backpressurePolicy = policy;
+        this.backpressureTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 设置连接可写状态变化的回调,配合{@link BackpressurePolicy#CALLBACK}控制音频生产速度
+     *
+     * @param listener
+     */
+    public void setWritabilityListener(WritabilityListener listener) {
+        conn.setWritabilityListener(listener);
+    }
+
+    /**
+     * 设置离线音频发送使用的调度器,默认所有会话共用{@link AudioPacer#getDefault()}
+     *
+     * @param audioPacer
+     */
+    public void setAudioPacer(AudioPacer audioPacer) {
+        this.audioPacer = audioPacer;
+    }
+
+    /**
+     * 设置客户端静音检测,长时间的静音不再发送,节省上行带宽.仅适用于pcm格式(开启opu编码时输入的pcm也可以),
+     * 采样率须与任务的sample_rate一致,否则开始任务时抛出异常.须在开始任务前设置.
+     * 服务端返回的时间相对于实际发送的音频,可通过{@link VoiceActivityDetector#toOriginalMillis(long)}换算
+     *
+     * @param voiceActivityDetector 为null时关闭
+     */
+    public void setVoiceActivityDetector(VoiceActivityDetector voiceActivityDetector) {
+        this.voiceActivityDetector = voiceActivityDetector;
+    }
+
+    public VoiceActivityDetector getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+
+    /**
+     * 发送pcm音频,由sdk按640字节一帧编码为opu后发送,上行数据量约为pcm的1/8到1/10,format同时设置为opu.
+     * 自行编码为opu的音频直接设置format为opu即可,不要开启
+     *
+     * @param enable
+     */
+    public void setOpuEncoding(boolean enable) {
+        this.opuEncoding = enable;
+        if (enable) {
+            payload.put(Constant.PROP_ASR_FORMAT, InputFormatEnum.OPU.getName());
+        }
+    }
+
+    public boolean isOpuEncoding() {
+        return opuEncoding;
+    }
+
+    /**
+     * 发送音频前的检查:任务已结束({@link #isSendStopped()})时丢弃,提示过长的发送间隔,检查当前状态能否发送,
+     * 并按{@link BackpressurePolicy}处理不可写的连接
+     *
+     * @return 返回false时丢弃本次音频
+     */
+    protected boolean prepareSend() {
+        if (isSendStopped()) {
+            logger.info("state is {} stop send", state);
+            return false;
+        }
+        long sendInterval;
+        if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
+            logger.warn("too large binary send interval: {} million second",sendInterval);
+        }
+        state.checkSend();
+        checkWritable();
+        return true;
+    }
+
+    /**
+     * 检查后发送data中从offset开始的length个字节,数据在返回前已拷贝
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    protected void doSend(byte[] data, int offset, int length) {
+        if (!prepareSend()) {
+            return;
+        }
+        try {
+            sendAudio(data, offset, length);
+            lastSendTime=System.currentTimeMillis();
+        } catch (Exception e) {
+            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 逐块读取音频流并发送,每块发送前由{@link #prepareSend()}检查,返回false时停止读取
+     *
+     * @param ins
+     */
+    protected void doSend(InputStream ins) {
+        try {
+            byte[] bytes = new byte[8000];
+            int len;
+            while ((len = ins.read(bytes)) > 0) {
+                if (!prepareSend()) {
+                    return;
+                }
+                sendAudio(bytes, 0, len);
+                lastSendTime=System.currentTimeMillis();
+            }
+        } catch (Exception e) {
+            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 检查后发送data中position到limit之间的数据,不改变data的position
+     *
+     * @param data
+     */
+    protected void doSend(ByteBuffer data) {
+        if (!prepareSend()) {
+            return;
+        }
+        try {
+            sendAudio(data);
+            lastSendTime=System.currentTimeMillis();
+        } catch (Exception e) {
+            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 检查后发送data中的可读数据,data的所有权转移给sdk,检查失败或丢弃时释放
+     *
+     * @param data
+     */
+    protected void doSend(ByteBuf data) {
+        try {
+            if (!prepareSend()) {
+                ReferenceCountUtil.release(data);
+                return;
+            }
+        } catch (RuntimeException e) {
+            ReferenceCountUtil.release(data);
+            throw e;
+        }
+        try {
+            sendAudio(data);
+            lastSendTime=System.currentTimeMillis();
+        } catch (Exception e) {
+            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 发送音频数据,设置了静音检测时只发送检测后保留的部分,开启opu编码时发送编码后的数据
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    protected void sendAudio(byte[] data, int offset, int length) {
+        if (voiceActivityDetector == null) {
+            writeAudio(data, offset, length);
+        } else {
+            voiceActivityDetector.process(data, offset, length, binaryOutput);
+        }
+    }
+
+    private void writeAudio(byte[] data, int offset, int length) {
+        OpuEncoder encoder = opuEncoder;
+        if (encoder == null) {
+            conn.sendBinary(data, offset, length);
+        } else {
+            encoder.encode(data, offset, length, opuOutput);
+        }
+    }
+
+    /**
+     * 是否需要处理音频内容,否则ByteBuffer及ByteBuf直接发送,不做拷贝.
+     * 返回true时ByteBuffer及ByteBuf转为byte[]后由{@link #sendAudio(byte[], int, int)}发送,子类需要检查音频内容时覆盖
+     */
+    protected boolean isAudioProcessed() {
+        return voiceActivityDetector != null || opuEncoder != null;
+    }
+
+    /**
+     * 发送data中position到limit之间的数据,不改变data的position
+     *
+     * @param data
+     */
+    protected void sendAudio(ByteBuffer data) {
+        if (!isAudioProcessed()) {
+            conn.sendBinary(data);
+        } else if (data.hasArray()) {
+            sendAudio(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            sendAudio(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * 发送data中的可读数据,data的所有权转移给sdk
+     *
+     * @param data
+     */
+    protected void sendAudio(ByteBuf data) {
+        if (!isAudioProcessed()) {
+            conn.sendBinary(data);
+            return;
+        }
+        try {
+            if (data.hasArray()) {
+                sendAudio(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes());
+            } else {
+                byte[] bytes = new byte[data.readableBytes()];
+                data.getBytes(data.readerIndex(), bytes);
+                sendAudio(bytes, 0, bytes.length);
+            }
+        } finally {
+            ReferenceCountUtil.release(data);
+        }
+    }
+
+    /**
+     * 当前音频格式及采样率对应的码率,未设置时按16k pcm
+     *
+     * @return 每秒字节数
+     */
+    protected int getAudioBytesPerSecond() {
+        if (payload == null || opuEncoding) {
+            return AudioPacer.bytesPerSecond(InputFormatEnum.PCM, SampleRateEnum.SAMPLE_RATE_16K);
+        }
+        Integer sampleRate = (Integer)payload.get(Constant.PROP_ASR_SAMPLE_RATE);
+        return AudioPacer.bytesPerSecond((String)payload.get(Constant.PROP_ASR_FORMAT),
+            sampleRate == null ? SampleRateEnum.SAMPLE_RATE_16K.value : sampleRate);
+    }
+
+    /**
+     * 由{@link AudioPacer}按指定速率从数据源读取并发送,立即返回.任务结束后不再发送,
+     * 连接不可写时按{@link BackpressurePolicy}处理,但不会阻塞调度线程
+     *
+     * @param ins            数据源,发送结束后由调用方关闭
+     * @param batchSize      每次发送的字节数
+     * @param bytesPerSecond 发送速率,小于等于0表示不限速
+     * @return 以发送的总字节数完成
+     */
+    protected Future<Long> sendPaced(InputStream ins, int batchSize, int bytesPerSecond) {
+        return submitPaced(ins, batchSize, AudioPacer.fixedRate(bytesPerSecond), false);
+    }
+
+    /**
+     * 异步发送离线音频:按format及sampleRate对应的码率实时发送,每批100ms的数据,立即返回.
+     * 由所有会话共用的{@link AudioPacer}调度,不占用调用线程,
+     * 适用于大量文件同时回放的场景
+     *
+     * @param ins 离线音频文件流,发送结束后由调用方关闭
+     * @return 发送完毕时以发送的总字节数成功
+     */
+    public Future<Long> sendAsync(InputStream ins) {
+        int bytesPerSecond = getAudioBytesPerSecond();
+        return sendPaced(ins, Math.max(bytesPerSecond / 10, 1), bytesPerSecond);
+    }
+
+    /**
+     * 离线文件快速发送:以实时码率的speedup倍发送,maxLagMillis大于0时根据{@link #processedAudioMillis}
+     * 动态调整,已发送的音频领先服务端处理进度越多速率越低,领先超过maxLagMillis时降为实时速率.
+     * 无论{@link BackpressurePolicy}如何设置,连接不可写时都暂停发送,即不超过服务端的接收速度
+     *
+     * @param ins          数据源,发送结束后由调用方关闭
+     * @param speedup      相对实时码率的倍数,小于等于0表示不限速
+     * @param maxLagMillis 允许领先服务端处理进度的最大音频时长,单位毫秒,小于等于0表示不根据进度调整
+     * @return 发送完毕时以吞吐统计成功
+     */
+    protected Future<ThroughputStats> sendFast(InputStream ins, final double speedup, final long maxLagMillis) {
+        final int realtime = getAudioBytesPerSecond();
+        AudioPacer.RateControl rateControl = new AudioPacer.RateControl() {
+            @Override
+            public int bytesPerSecond(long sentBytes) {
+                double factor = speedup;
+                if (maxLagMillis > 0) {
+                    long processed = Math.max(processedAudioMillis, 0);
+                    if (voiceActivityDetector != null) {
+                        processed = voiceActivityDetector.toOriginalMillis(processed);
+                    }
+                    long lag = sentBytes * 1000 / realtime - processed;
+                    if (lag >= maxLagMillis) {
+                        factor = 1;
+                    } else if (speedup > 1) {
+                        factor = 1 + (speedup - 1) * (maxLagMillis - lag) / maxLagMillis;
+                    }
+                }
+                return factor <= 0 ? 0 : (int)(realtime * factor);
+            }
+        };
+        final long startNanos = System.nanoTime();
+        final Future<Long> sent = submitPaced(ins, Math.max(realtime / 10, 1), rateControl, true);
+        final Promise<ThroughputStats> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        sent.addListener(new GenericFutureListener<Future<Long>>() {
+            @Override
+            public void operationComplete(Future<Long> future) {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                ThroughputStats stats = new ThroughputStats(future.getNow(), realtime, System.nanoTime() - startNanos);
+                logger.info("file sent,{},task_id:{}", stats, currentTaskId);
+                promise.trySuccess(stats);
+            }
+        });
+        promise.addListener(new GenericFutureListener<Future<ThroughputStats>>() {
+            @Override
+            public void operationComplete(Future<ThroughputStats> future) {
+                if (future.isCancelled()) {
+                    sent.cancel(false);
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * @param throttle 为true时连接不可写即暂停发送,用于不限速或倍速发送
+     */
+    private Future<Long> submitPaced(InputStream ins, int batchSize, AudioPacer.RateControl rateControl,
+                                     final boolean throttle) {
+        state.checkSend();
+        AudioPacer pacer = audioPacer != null ? audioPacer : AudioPacer.getDefault();
+        return pacer.submit(ins, batchSize, rateControl, new AudioPacer.Sink() {
+            private long blockedSince = -1;
+
+            @Override
+            public boolean isReady() {
+                if (state.isTerminal() || !throttle && backpressurePolicy == BackpressurePolicy.NONE) {
+                    return true;
+                }
+                if (!conn.isActive()) {
+                    throw new RuntimeException("can't send,connection is inactive,task_id:" + currentTaskId);
+                }
+                if (conn.isWritable()) {
+                    blockedSince = -1;
+                    return true;
+                }
+                if (throttle && backpressurePolicy != BackpressurePolicy.BLOCK) {
+                    return false;
+                }
+                switch (backpressurePolicy) {
+                    case BLOCK:
+                        long now = System.currentTimeMillis();
+                        if (blockedSince < 0) {
+                            blockedSince = now;
+                        } else if (now - blockedSince > backpressureTimeoutMillis) {
+                            throw new RuntimeException(String.format(
+                                "connection is not writable after waiting %d ms,task_id:%s",
+                                backpressureTimeoutMillis, currentTaskId));
+                        }
+                        return false;
+                    case FAIL_FAST:
+                        throw new RuntimeException("can't send,connection is not writable,task_id:" + currentTaskId);
+                    default:
+                        return true;
+                }
+            }
+
+            @Override
+            public boolean write(byte[] data, int offset, int length) {
+                if (isSendStopped()) {
+                    logger.info("state is {} stop send", state);
+                    return false;
+                }
+                sendAudio(data, offset, length);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 是否不再发送音频,为true时{@link AudioPacer}停止读取数据源
+     *
+     * @return 默认在任务结束后返回true
+     */
+    protected boolean isSendStopped() {
+        return state.isTerminal();
+    }
+
+    /**
+     * 按批大小及间隔换算速率,由{@link AudioPacer}发送,调用线程只等待发送完毕
+     *
+     * @param ins
+     * @param batchSize
+     * @param sleepInterval 每批数据对应的时长,单位毫秒
+     */
+    protected void sendPacedAndWait(InputStream ins, int batchSize, int sleepInterval) {
+        int bytesPerSecond = sleepInterval > 0 ? (int)(batchSize * 1000L / sleepInterval) : 0;
+        Future<Long> future = sendPaced(ins, batchSize, bytesPerSecond);
+        try {
+            future.sync();
+        } catch (Exception e) {
+            future.cancel(false);
+            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 发送音频前按策略检查连接是否可写
+     */
+    protected void checkWritable() {
+        if (backpressurePolicy == BackpressurePolicy.NONE) {
+            return;
+        }
+        if (!conn.isActive()) {
+            throw new RuntimeException("can't send,connection is inactive,task_id:" + currentTaskId);
+        }
+        if (conn.isWritable()) {
+            return;
+        }
+        switch (backpressurePolicy) {
+            case BLOCK:
+                boolean writable;
+                try {
+                    writable = conn.awaitWritable(backpressureTimeoutMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("interrupted while waiting for connection writable", e);
+                }
+                if (!writable) {
+                    throw new RuntimeException(String.format(
+                        "connection is not writable after waiting %d ms,task_id:%s", backpressureTimeoutMillis,
+                        currentTaskId));
+                }
+                break;
+            case FAIL_FAST:
+                throw new RuntimeException("can't send,connection is not writable,task_id:" + currentTaskId);
+            default:
+                break;
         }
-        return JSON.toJSONString(result);
     }
 
     public Connection getConnection(){
@@ -295,7 +908,230 @@ public class SpeechReqProtocol {
         return state;
     }
 
+    /**
+     * 按合法路径原子切换状态,进入终止状态时完成当前任务的Future
+     *
+     * @param next
+     * @return 当前状态不能切换到next时返回false,状态不变
+     */
+    protected boolean transitTo(State next) {
+        State current;
+        do {
+            current = state;
+            if (!current.canTransitTo(next)) {
+                logger.debug("ignore state transition {} -> {},task_id:{}", current, next, currentTaskId);
+                return false;
+            }
+        } while (!STATE_UPDATER.compareAndSet(this, current, next));
+        if (next == STATE_REQUEST_CONFIRMED || next.isTerminal()) {
+            readyPromise.trySuccess(next);
+        }
+        if (next.isTerminal()) {
+            completionPromise.trySuccess(next);
+            if (next != STATE_COMPLETE) {
+                resultPromise.tryFailure(taskFailure(next));
+            }
+        }
+        if (next == STATE_CLOSED) {
+            releaseOpuEncoder();
+        }
+        return true;
+    }
+
+    /**
+     * 开启opu编码时按当前采样率新建编码器,释放上一个任务的编码器
+     */
+    private void prepareOpuEncoder() {
+        releaseOpuEncoder();
+        if (!opuEncoding) {
+            return;
+        }
+        if (!InputFormatEnum.OPU.getName().equals(payload.get(Constant.PROP_ASR_FORMAT))) {
+            throw new RuntimeException("opu encoding requires format opu,format:" + payload.get(Constant.PROP_ASR_FORMAT));
+        }
+        Integer sampleRate = (Integer)payload.get(Constant.PROP_ASR_SAMPLE_RATE);
+        int rate = sampleRate == null ? SampleRateEnum.SAMPLE_RATE_16K.value : sampleRate;
+        opuEncoder = new OpuEncoder(rate);
+    }
+
+    /**
+     * 静音检测只处理pcm,开启opu编码时输入的也是pcm;采样率须与任务一致,否则帧长及时间换算都不对
+     */
+    private void checkVoiceActivityDetector() {
+        Object format = payload == null ? null : payload.get(Constant.PROP_ASR_FORMAT);
+        if (!opuEncoding && format != null && !InputFormatEnum.PCM.getName().equals(format)) {
+            throw new RuntimeException("voice activity detector only supports pcm,format:" + format);
+        }
+        Integer sampleRate = payload == null ? null : (Integer)payload.get(Constant.PROP_ASR_SAMPLE_RATE);
+        int rate = sampleRate == null ? SampleRateEnum.SAMPLE_RATE_16K.value : sampleRate;
+        if (voiceActivityDetector.getSampleRate().value != rate) {
+            throw new RuntimeException("voice activity detector sample rate " + voiceActivityDetector.getSampleRate().value
+                + " doesn't match sample_rate " + rate);
+        }
+    }
+
+    private void releaseOpuEncoder() {
+        OpuEncoder encoder = opuEncoder;
+        if (encoder != null) {
+            opuEncoder = null;
+            encoder.close();
+        }
+    }
+
+    /**
+     * 收到任务结束消息:切换到{@link State#STATE_COMPLETE}后以该消息完成结果Future
+     *
+     * @param response 结束消息,复用response对象时须传入副本
+     */
+    protected void completeTask(SpeechResProtocol response) {
+        Promise<SpeechResProtocol> promise = resultPromise;
+        if (transitTo(STATE_COMPLETE)) {
+            promise.trySuccess(response);
+        }
+    }
+
+    /**
+     * 收到TaskFailed:记录失败原因后切换到{@link State#STATE_FAIL}
+     *
+     * @param response 失败消息,为null时只切换状态
+     */
+    protected void failTask(SpeechResProtocol response) {
+        if (response != null) {
+            failure = new SpeechTaskException(response.getStatus(), response.getStatusText(), response.getTaskId());
+        }
+        transitTo(STATE_FAIL);
+    }
+
+    private SpeechTaskException taskFailure(State terminal) {
+        SpeechTaskException f = failure;
+        if (f == null) {
+            f = new SpeechTaskException("task terminated before completion,state:" + terminal, currentTaskId);
+        }
+        return f;
+    }
+
+    /**
+     * 开始新任务:重置任务相关的Future并切换到{@link State#STATE_REQUEST_SENT},须在发送请求之前调用,
+     * 避免服务端的确认先于状态切换到达
+     */
+    protected void beginTask() {
+        if (voiceActivityDetector != null) {
+            checkVoiceActivityDetector();
+        }
+        failure = null;
+        processedAudioMillis = -1;
+        if (voiceActivityDetector != null) {
+            voiceActivityDetector.reset();
+        }
+        prepareOpuEncoder();
+        readyPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+        completionPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+        resultPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+        if (!transitTo(STATE_REQUEST_SENT)) {
+            throw new RuntimeException("can't start,current state is " + state);
+        }
+    }
+
+    /**
+     * 当前任务收到服务端确认(结果为{@link State#STATE_REQUEST_CONFIRMED})或提前终止时完成
+     *
+     * @return
+     */
+    public Future<State> getReadyFuture() {
+        return readyPromise;
+    }
+
+    /**
+     * 当前任务进入终止状态({@link State#isTerminal()})时完成,结果为终止时的状态
+     *
+     * @return
+     */
+    public Future<State> getCompletionFuture() {
+        return completionPromise;
+    }
+
+    /**
+     * 当前任务的最终结果,子类以具体的应答类型暴露
+     *
+     * @return
+     */
+    protected Future<? extends SpeechResProtocol> getResultFuture() {
+        return resultPromise;
+    }
+
+    /**
+     * 将状态Future转换为期望状态的Future:进入expected时成功,否则以失败原因失败
+     */
+    private Future<State> expect(Future<State> source, final State expected) {
+        final Promise<State> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        source.addListener(new GenericFutureListener<Future<State>>() {
+            @Override
+            public void operationComplete(Future<State> future) {
+                State result = future.getNow();
+                if (result == expected) {
+                    promise.trySuccess(result);
+                } else {
+                    promise.tryFailure(taskFailure(result));
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 同步等待服务端应答前调用:在连接的io线程(如createAsync的回调,未设置回调线程池时的监听回调)中等待只会超时,直接失败
+     *
+     * @param method 调用的方法名
+     * @throws IllegalStateException 当前线程为连接的io线程
+     */
+    protected void checkBlocking(String method) {
+        if (conn != null && conn.inEventLoop()) {
+            throw new IllegalStateException(String.format(
+                "%s can't wait in the io thread of the connection,use the async method instead,task_id:%s", method,
+                currentTaskId));
+        }
+    }
+
+    /**
+     * 异步开始任务:发送请求后立即返回,收到服务端确认时Future成功,任务失败或连接关闭时Future失败.
+     * 当前状态不能开始时直接抛出异常
+     *
+     * @return
+     */
+    public Future<State> startAsync() {
+        doStart();
+        return expect(readyPromise, STATE_REQUEST_CONFIRMED);
+    }
+
+    /**
+     * 发送结束指令并返回任务结束的Future,进入{@link State#STATE_COMPLETE}时成功,任务失败或连接关闭时失败.
+     * 当前状态不能结束时直接抛出异常
+     *
+     * @param command 结束指令
+     * @return
+     */
+    protected Future<State> sendStop(String command) {
+        state.checkStop();
+        if (voiceActivityDetector != null) {
+            voiceActivityDetector.flush(binaryOutput);
+        }
+        OpuEncoder encoder = opuEncoder;
+        if (encoder != null) {
+            encoder.flush(opuOutput);
+        }
+        transitTo(STATE_STOP_SENT);
+        conn.sendText(command);
+        return expect(completionPromise, STATE_COMPLETE);
+    }
+
     public void start() throws Exception{
+        doStart();
+    }
+
+    /**
+     * 发送开始请求,不等待服务端确认
+     */
+    protected void doStart() {
         state.checkStart();
         Map<String,Long> network=new HashMap<String, Long>();
         network.put("connect_cost",conn.getConnectingLatency());
@@ -304,8 +1140,8 @@ public class SpeechReqProtocol {
         String taskId = IdGen.genId();
         currentTaskId = taskId;
         setTaskId(currentTaskId);
+        beginTask();
         conn.sendText(this.serialize());
-        state = STATE_REQUEST_SENT;
     }
 
 }
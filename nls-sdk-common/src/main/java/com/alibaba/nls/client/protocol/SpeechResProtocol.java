@@ -19,6 +19,9 @@ package com.alibaba.nls.client.protocol;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.nls.client.util.JsonScanner;
+
 /**
  * @author zhishen.ml
  * @date 2017/11/27
@@ -28,25 +31,124 @@ import java.util.Map;
 public class SpeechResProtocol {
     public Map<String, Object> header = new HashMap<String, Object>();
     public Map<String, Object> payload = new HashMap<String, Object>();
+    private String message;
+
+    /**
+     * 绑定服务端消息原文,不做完整解析:只定位header及payload,其中的字段在首次访问时才从原文读取,
+     * 访问嵌套对象或修改时再完整解析.替代JSON.parseObject(message, XxxResponse.class),获取name等少量字段时不构建map.
+     * 同一个对象可以重复绑定不同的消息(享元模式),此时之前读取的结果不再有效
+     *
+     * @param message 服务端返回的json消息
+     */
+    public void bind(String message) {
+        long whole = JsonScanner.whole(message);
+        this.message = message;
+        long headerRange = JsonScanner.find(message, whole, "header");
+        long payloadRange = JsonScanner.find(message, whole, "payload");
+        if (header instanceof LazyJsonMap && payload instanceof LazyJsonMap) {
+            ((LazyJsonMap)header).reset(message, headerRange);
+            ((LazyJsonMap)payload).reset(message, payloadRange);
+        } else {
+            header = new LazyJsonMap(message, headerRange);
+            payload = new LazyJsonMap(message, payloadRange);
+        }
+    }
+
+    /**
+     * 将target绑定到当前对象的消息原文,返回target.复用的response需要在回调之外使用时,用于创建独立的副本.
+     * 未绑定原文时复制header及payload
+     *
+     * @param target 新建的response对象
+     * @return target
+     */
+    public <T extends SpeechResProtocol> T copyTo(T target) {
+        if (message != null) {
+            target.bind(message);
+        } else {
+            target.header = new HashMap<String, Object>(header);
+            target.payload = new HashMap<String, Object>(payload);
+        }
+        return target;
+    }
+
+    /**
+     * 读取字符串字段,绑定原文时直接从原文读取
+     *
+     * @param map header或payload
+     * @param key
+     * @return
+     */
+    protected static String readString(Map<String, Object> map, String key) {
+        if (map instanceof LazyJsonMap) {
+            return ((LazyJsonMap)map).getString(key);
+        }
+        Object o = map.get(key);
+        return o == null ? null : o.toString();
+    }
+
+    /**
+     * 读取整数字段,不装箱
+     *
+     * @param map          header或payload
+     * @param key
+     * @param defaultValue 字段不存在时的返回值
+     * @return
+     */
+    protected static long readLong(Map<String, Object> map, String key, long defaultValue) {
+        if (map instanceof LazyJsonMap) {
+            return ((LazyJsonMap)map).getLong(key, defaultValue);
+        }
+        return LazyJsonMap.toLong(map.get(key), defaultValue);
+    }
+
+    /**
+     * 读取浮点数字段,不装箱
+     *
+     * @param map          header或payload
+     * @param key
+     * @param defaultValue 字段不存在时的返回值
+     * @return
+     */
+    protected static double readDouble(Map<String, Object> map, String key, double defaultValue) {
+        if (map instanceof LazyJsonMap) {
+            return ((LazyJsonMap)map).getDouble(key, defaultValue);
+        }
+        return LazyJsonMap.toDouble(map.get(key), defaultValue);
+    }
+
+    /**
+     * 读取字段值的json原文,用于直接反序列化嵌套对象或数组,避免先解析为JSONArray再转换
+     *
+     * @param map header或payload
+     * @param key
+     * @return
+     */
+    protected static String readRaw(Map<String, Object> map, String key) {
+        if (map instanceof LazyJsonMap) {
+            return ((LazyJsonMap)map).getRaw(key);
+        }
+        Object o = map.get(key);
+        return o == null ? null : JSON.toJSONString(o);
+    }
 
     public String getNameSpace() {
-        return (String)header.get(Constant.PROP_NAMESPACE);
+        return readString(header, Constant.PROP_NAMESPACE);
     }
 
     public String getName() {
-        return (String)header.get(Constant.PROP_NAME);
+        return readString(header, Constant.PROP_NAME);
     }
 
     public int getStatus() {
-        return (Integer)header.get(Constant.PROP_STATUS);
+        return (int)readLong(header, Constant.PROP_STATUS, 0);
     }
 
     public String getStatusText() {
-        return (String)header.get(Constant.PROP_STATUS_TEXT);
+        return readString(header, Constant.PROP_STATUS_TEXT);
     }
 
     public String getTaskId() {
-        return (String)header.get(Constant.PROP_TASK_ID);
+        return readString(header, Constant.PROP_TASK_ID);
     }
 
     /**
@@ -55,7 +157,7 @@ public class SpeechResProtocol {
      * @return
      */
     public String getString(String key) {
-        return (String)payload.get(key);
+        return readString(payload, key);
     }
 
     /**
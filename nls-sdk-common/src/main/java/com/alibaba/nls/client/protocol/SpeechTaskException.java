@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+/**
+ * 任务未正常结束:服务端返回TaskFailed,或连接在任务结束前关闭(此时status为0)
+ */
+public class SpeechTaskException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final String statusText;
+    private final String taskId;
+
+    public SpeechTaskException(int status, String statusText, String taskId) {
+        super(String.format("task failed,status:%d,status_text:%s,task_id:%s", status, statusText, taskId));
+        this.status = status;
+        this.statusText = statusText;
+        this.taskId = taskId;
+    }
+
+    public SpeechTaskException(String message, String taskId) {
+        super(message + ",task_id:" + taskId);
+        this.status = 0;
+        this.statusText = message;
+        this.taskId = taskId;
+    }
+
+    /**
+     * @return 服务端返回的状态码,连接关闭等本地原因时为0
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+/**
+ * 离线文件发送的吞吐统计,以每秒实际耗时发送的音频秒数衡量,1表示实时速率
+ */
+public class ThroughputStats {
+    private final long audioBytes;
+    private final int bytesPerSecond;
+    private final long wallNanos;
+
+    /**
+     * @param audioBytes     发送的音频字节数
+     * @param bytesPerSecond 音频实时码率,每秒字节数
+     * @param wallNanos      发送实际耗时,单位纳秒
+     */
+    public ThroughputStats(long audioBytes, int bytesPerSecond, long wallNanos) {
+        this.audioBytes = audioBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.wallNanos = wallNanos;
+    }
+
+    public long getAudioBytes() {
+        return audioBytes;
+    }
+
+    /**
+     * 发送的音频时长,单位秒
+     *
+     * @return
+     */
+    public double getAudioSeconds() {
+        return bytesPerSecond <= 0 ? 0 : (double)audioBytes / bytesPerSecond;
+    }
+
+    /**
+     * 发送实际耗时,单位秒
+     *
+     * @return
+     */
+    public double getWallSeconds() {
+        return wallNanos / 1e9;
+    }
+
+    /**
+     * 每秒实际耗时发送的音频秒数
+     *
+     * @return
+     */
+    public double getSpeedRatio() {
+        return wallNanos <= 0 ? 0 : getAudioSeconds() / getWallSeconds();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("audio:%.2fs,wall:%.2fs,speed:%.2fx", getAudioSeconds(), getWallSeconds(),
+            getSpeedRatio());
+    }
+}
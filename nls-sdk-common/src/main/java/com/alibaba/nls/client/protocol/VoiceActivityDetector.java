@@ -0,0 +1,332 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端静音检测,仅适用于8k/16k 16bit单声道pcm.按10ms一帧根据平均幅度及过零率判断是否有语音.
+ * 语音结束后保留keepSilenceMillis的静音供服务端断句,之后的静音不再发送,语音重新开始时补发之前preRollMillis的音频,避免截断开头.
+ * 服务端返回的时间是相对已发送音频的,通过{@link #toOriginalMillis(long)}换算为原始音频中的时间.
+ * 非线程安全,同一时间只能有一个线程发送
+ */
+public class VoiceActivityDetector {
+    /**
+     * 帧长,单位毫秒
+     */
+    public static final int FRAME_MILLIS = SpeechFrameClassifier.FRAME_MILLIS;
+
+    /**
+     * 检测后的音频输出
+     */
+    public interface Output {
+        void write(byte[] data, int offset, int length);
+    }
+
+    /**
+     * 一段未发送的静音
+     */
+    public static class DroppedSpan {
+        private final long beginMillis;
+        private final long sentMillis;
+        private final long durationMillis;
+
+        DroppedSpan(long beginMillis, long sentMillis, long durationMillis) {
+            this.beginMillis = beginMillis;
+            this.sentMillis = sentMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * 在原始音频中的开始时间,单位毫秒
+         *
+         * @return
+         */
+        public long getBeginMillis() {
+            return beginMillis;
+        }
+
+        /**
+         * 在已发送音频中的位置,即服务端时间轴上被省略的位置,单位毫秒
+         *
+         * @return
+         */
+        public long getSentMillis() {
+            return sentMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + beginMillis + "," + (beginMillis + durationMillis) + ")";
+        }
+    }
+
+    private final SampleRateEnum sampleRate;
+    private final SpeechFrameClassifier classifier;
+    private final int frameBytes;
+    private final int keepSilenceFrames;
+    private final int preRollFrames;
+
+    private final byte[] pending;
+    private int pendingLength;
+    private byte[] out;
+    private int outLength;
+    /**
+     * 语音开始前补发的最近几帧,环形缓冲
+     */
+    private final byte[] ring;
+    private int ringStart;
+    private int ringCount;
+
+    private int silentFrames;
+    private long frameIndex;
+    private long dropStartFrame = -1;
+    private long droppedInSpan;
+    private long droppedFrames;
+    private final List<DroppedSpan> spans = new ArrayList<DroppedSpan>();
+
+    /**
+     * 语音结束后保留500ms静音,语音开始前补发200ms
+     *
+     * @param sampleRate
+     */
+    public VoiceActivityDetector(SampleRateEnum sampleRate) {
+        this(sampleRate, 500, 200);
+    }
+
+    /**
+     * @param sampleRate
+     * @param keepSilenceMillis 语音结束后继续发送的静音时长,服务端依靠这段静音断句,不宜小于服务端的断句静音阈值
+     * @param preRollMillis     语音开始时补发之前的音频时长
+     */
+    public VoiceActivityDetector(SampleRateEnum sampleRate, int keepSilenceMillis, int preRollMillis) {
+        this.sampleRate = sampleRate;
+        this.classifier = new SpeechFrameClassifier(sampleRate);
+        this.frameBytes = classifier.getFrameBytes();
+        this.keepSilenceFrames = keepSilenceMillis / FRAME_MILLIS;
+        this.preRollFrames = preRollMillis / FRAME_MILLIS;
+        this.pending = new byte[frameBytes];
+        this.ring = new byte[Math.max(preRollFrames, 1) * frameBytes];
+        this.out = new byte[frameBytes * 32];
+    }
+
+    /**
+     * 检测的音频采样率,须与任务的sample_rate一致
+     *
+     * @return
+     */
+    public SampleRateEnum getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 调整语音判定阈值
+     *
+     * @param minEnergy   平均幅度低于该值时一定是静音,默认200
+     * @param speechRatio 平均幅度超过噪声基线的该倍数时判定为语音,默认3
+     * @param zcrPermille 幅度超过噪声基线2倍且过零率(千分比)不低于该值时也判定为语音,用于识别清辅音,默认250
+     */
+    public void setThreshold(int minEnergy, int speechRatio, int zcrPermille) {
+        classifier.setThreshold(minEnergy, speechRatio, zcrPermille);
+    }
+
+    /**
+     * 检测一段音频,需要发送的部分写入output.不足一帧的数据留到下次或{@link #flush(Output)}时处理
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param output
+     */
+    public void process(byte[] data, int offset, int length, Output output) {
+        outLength = 0;
+        int end = offset + length;
+        if (pendingLength > 0) {
+            int n = Math.min(frameBytes - pendingLength, length);
+            System.arraycopy(data, offset, pending, pendingLength, n);
+            pendingLength += n;
+            offset += n;
+            if (pendingLength < frameBytes) {
+                return;
+            }
+            processFrame(pending, 0);
+            pendingLength = 0;
+        }
+        while (end - offset >= frameBytes) {
+            processFrame(data, offset);
+            offset += frameBytes;
+        }
+        if (offset < end) {
+            System.arraycopy(data, offset, pending, 0, end - offset);
+            pendingLength = end - offset;
+        }
+        if (outLength > 0) {
+            output.write(out, 0, outLength);
+        }
+    }
+
+    /**
+     * 音频结束:发送剩余不足一帧的数据,记录最后一段静音,之后可以开始新的音频
+     *
+     * @param output
+     */
+    public void flush(Output output) {
+        outLength = 0;
+        if (dropStartFrame < 0 && pendingLength > 0) {
+            append(pending, 0, pendingLength);
+        }
+        if (dropStartFrame >= 0) {
+            addSpan(droppedInSpan);
+            dropStartFrame = -1;
+            ringCount = 0;
+        }
+        pendingLength = 0;
+        silentFrames = 0;
+        if (outLength > 0) {
+            output.write(out, 0, outLength);
+        }
+    }
+
+    /**
+     * 清空检测状态及已记录的静音段,用于新的任务
+     */
+    public void reset() {
+        pendingLength = 0;
+        ringCount = 0;
+        classifier.reset();
+        silentFrames = 0;
+        frameIndex = 0;
+        dropStartFrame = -1;
+        droppedFrames = 0;
+        synchronized (spans) {
+            spans.clear();
+        }
+    }
+
+    private void processFrame(byte[] data, int offset) {
+        if (classifier.isSpeech(data, offset)) {
+            if (dropStartFrame >= 0) {
+                //补发环形缓冲中的帧,它们不再计入省略的静音
+                addSpan(droppedInSpan - ringCount);
+                int start = ringStart;
+                for (int i = 0; i < ringCount; i++) {
+                    append(ring, start * frameBytes, frameBytes);
+                    start = (start + 1) % preRollFrames;
+                }
+                ringCount = 0;
+                dropStartFrame = -1;
+            }
+            silentFrames = 0;
+            append(data, offset, frameBytes);
+        } else if (++silentFrames <= keepSilenceFrames) {
+            append(data, offset, frameBytes);
+        } else {
+            if (dropStartFrame < 0) {
+                dropStartFrame = frameIndex;
+                droppedInSpan = 0;
+                ringStart = 0;
+                ringCount = 0;
+            }
+            droppedInSpan++;
+            if (preRollFrames > 0) {
+                int slot = (ringStart + ringCount) % preRollFrames;
+                System.arraycopy(data, offset, ring, slot * frameBytes, frameBytes);
+                if (ringCount < preRollFrames) {
+                    ringCount++;
+                } else {
+                    ringStart = (ringStart + 1) % preRollFrames;
+                }
+            }
+        }
+        frameIndex++;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (outLength + length > out.length) {
+            byte[] bigger = new byte[Math.max(out.length * 2, outLength + length)];
+            System.arraycopy(out, 0, bigger, 0, outLength);
+            out = bigger;
+        }
+        System.arraycopy(data, offset, out, outLength, length);
+        outLength += length;
+    }
+
+    private void addSpan(long frames) {
+        if (frames <= 0) {
+            return;
+        }
+        long begin = dropStartFrame * FRAME_MILLIS;
+        DroppedSpan span = new DroppedSpan(begin, begin - droppedFrames * FRAME_MILLIS, frames * FRAME_MILLIS);
+        droppedFrames += frames;
+        synchronized (spans) {
+            spans.add(span);
+        }
+    }
+
+    /**
+     * 已省略的静音段,按时间顺序
+     *
+     * @return
+     */
+    public List<DroppedSpan> getDroppedSpans() {
+        synchronized (spans) {
+            return new ArrayList<DroppedSpan>(spans);
+        }
+    }
+
+    /**
+     * 已省略的静音总时长,单位毫秒
+     *
+     * @return
+     */
+    public long getDroppedMillis() {
+        return droppedFrames * FRAME_MILLIS;
+    }
+
+    /**
+     * 已检测的音频总时长,单位毫秒
+     *
+     * @return
+     */
+    public long getProcessedMillis() {
+        return frameIndex * FRAME_MILLIS;
+    }
+
+    /**
+     * 将服务端返回的时间(相对已发送的音频)换算为原始音频中的时间
+     *
+     * @param sentMillis
+     * @return
+     */
+    public long toOriginalMillis(long sentMillis) {
+        long original = sentMillis;
+        synchronized (spans) {
+            for (DroppedSpan span : spans) {
+                if (span.sentMillis > sentMillis) {
+                    break;
+                }
+                original += span.durationMillis;
+            }
+        }
+        return original;
+    }
+}
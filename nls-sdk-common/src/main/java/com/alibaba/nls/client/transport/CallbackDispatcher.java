@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 回调分发:将listener回调从io线程转交给业务线程池执行,避免某个会话的慢回调阻塞同一io线程上的其它连接.
+ * 每个连接对应一个{@link SerialQueue},同一连接的回调严格按到达顺序串行执行,不同连接之间并行.
+ * 同时统计排队深度及分发延迟(回调从入队到开始执行的时间)
+ */
+public class CallbackDispatcher {
+    private static Logger logger = LoggerFactory.getLogger(CallbackDispatcher.class);
+    /**
+     * 单个连接一次最多连续执行的回调数,之后让出线程,避免回调很多的连接长期占用线程
+     */
+    private static final int MAX_BATCH = 64;
+
+    private final Executor executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong totalDelayNanos = new AtomicLong();
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+
+    /**
+     * @param executor 执行回调的线程池,由调用方负责关闭
+     */
+    public CallbackDispatcher(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * 为一个连接创建串行队列
+     *
+     * @return
+     */
+    public SerialQueue newQueue() {
+        return new SerialQueue();
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return 所有连接当前排队等待执行的回调数
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return 已执行的回调总数
+     */
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    /**
+     * @return 平均分发延迟,单位毫秒
+     */
+    public double getAvgDispatchDelayMillis() {
+        long count = dispatched.get();
+        return count == 0 ? 0 : totalDelayNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return 最大分发延迟,单位毫秒
+     */
+    public double getMaxDispatchDelayMillis() {
+        return maxDelayNanos.get() / 1e6;
+    }
+
+    /**
+     * 清零累计的分发次数及延迟统计
+     */
+    public void resetMetrics() {
+        dispatched.set(0);
+        totalDelayNanos.set(0);
+        maxDelayNanos.set(0);
+    }
+
+    private void record(long delayNanos) {
+        dispatched.incrementAndGet();
+        totalDelayNanos.addAndGet(delayNanos);
+        long max;
+        while ((max = maxDelayNanos.get()) < delayNanos) {
+            if (maxDelayNanos.compareAndSet(max, delayNanos)) {
+                break;
+            }
+        }
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long enqueueTime;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.enqueueTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * 单个连接的串行回调队列
+     */
+    public class SerialQueue implements Executor, Runnable {
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile long lastDelayNanos;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.offer(new Task(command));
+            size.incrementAndGet();
+            queued.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                //线程池已关闭,在当前线程执行,保证回调不丢失
+                logger.warn("callback executor rejected,run callbacks in current thread:{}", e.getMessage());
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Task task;
+                int n = 0;
+                while (n++ < MAX_BATCH && (task = tasks.poll()) != null) {
+                    size.decrementAndGet();
+                    queued.decrementAndGet();
+                    long delay = System.nanoTime() - task.enqueueTime;
+                    lastDelayNanos = delay;
+                    record(delay);
+                    try {
+                        task.runnable.run();
+                    } catch (Throwable e) {
+                        logger.error("error in callback", e);
+                    }
+                }
+            } finally {
+                running.set(false);
+            }
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * @return 当前排队等待执行的回调数
+         */
+        public int size() {
+            return size.get();
+        }
+
+        /**
+         * @return 最近一次回调的分发延迟,单位毫秒
+         */
+        public double getLastDispatchDelayMillis() {
+            return lastDelayNanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * 建连失败的错误分类,决定是否值得重试
+ */
+public enum ConnectErrorType {
+    /**
+     * 域名解析失败,通常是地址配置错误
+     */
+    DNS(false),
+    /**
+     * tcp连接失败,如连接被拒绝,连接超时
+     */
+    TCP(true),
+    /**
+     * tls握手失败
+     */
+    TLS(false),
+    /**
+     * websocket升级超时
+     */
+    TIMEOUT(true),
+    /**
+     * websocket升级返回4xx,如token无效,参数错误
+     */
+    UPGRADE_CLIENT_ERROR(false),
+    /**
+     * websocket升级返回429,服务端限流
+     */
+    UPGRADE_THROTTLED(true),
+    /**
+     * websocket升级返回5xx等其它非101状态
+     */
+    UPGRADE_SERVER_ERROR(true),
+    /**
+     * 其它错误,如握手过程中连接断开
+     */
+    OTHER(true);
+
+    private final boolean retryable;
+
+    ConnectErrorType(boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    /**
+     * 该类错误是否可能通过重试恢复
+     *
+     * @return
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * 沿cause链识别错误类型
+     *
+     * @param cause
+     * @return
+     */
+    public static ConnectErrorType of(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof WebSocketUpgradeException) {
+                int status = ((WebSocketUpgradeException)t).getStatusCode();
+                if (status == 429) {
+                    return UPGRADE_THROTTLED;
+                }
+                if (status == 408) {
+                    return TIMEOUT;
+                }
+                if (status >= 400 && status < 500) {
+                    return UPGRADE_CLIENT_ERROR;
+                }
+                return UPGRADE_SERVER_ERROR;
+            }
+            if (t instanceof UnknownHostException) {
+                return DNS;
+            }
+            if (t instanceof SSLException) {
+                return TLS;
+            }
+            if (t instanceof TimeoutException) {
+                return TIMEOUT;
+            }
+            if (t instanceof ConnectException || t instanceof NoRouteToHostException
+                || t instanceof ClosedChannelException) {
+                return TCP;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return OTHER;
+    }
+}
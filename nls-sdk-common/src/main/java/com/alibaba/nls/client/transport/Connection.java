@@ -16,6 +16,10 @@
 
 package com.alibaba.nls.client.transport;
 
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+
 /**
  * @author zhishen.ml
  * @date 2017/11/02
@@ -26,16 +30,83 @@ public interface Connection {
 
     public void sendText(final String payload);
 
+    /**
+     * 发送二进制数据.数据在调用返回前已拷贝至池化的直接内存,调用方可以立即复用payload
+     *
+     * @param payload
+     */
     public void sendBinary(byte[] payload);
 
+    /**
+     * 发送payload中从offset开始的length个字节.数据在调用返回前已拷贝至池化的直接内存,调用方可以立即复用payload
+     *
+     * @param payload
+     * @param offset
+     * @param length
+     */
+    public void sendBinary(byte[] payload, int offset, int length);
+
+    /**
+     * 发送payload中position到limit之间的数据,不改变payload的position.
+     * 数据在调用返回前已拷贝至池化的直接内存,调用方可以立即复用payload
+     *
+     * @param payload
+     */
+    public void sendBinary(ByteBuffer payload);
+
+    /**
+     * 发送payload中的可读数据,不做拷贝.
+     * 调用后payload的所有权转移给连接,写出后由连接释放,调用方不能再修改或release;连接不可用时payload会被立即释放
+     *
+     * @param payload 推荐使用{@link io.netty.buffer.PooledByteBufAllocator}分配的直接内存
+     */
+    public void sendBinary(ByteBuf payload);
+
     public void sendPing();
 
     public String getId();
 
     public boolean isActive();
 
+    /**
+     * 待发送数据是否低于写缓冲高水位
+     *
+     * @return
+     */
+    public boolean isWritable();
+
+    /**
+     * 等待连接恢复可写
+     *
+     * @param timeoutMillis 最长等待时间,单位毫秒
+     * @return 超时或连接断开时返回false
+     * @throws InterruptedException
+     */
+    public boolean awaitWritable(long timeoutMillis) throws InterruptedException;
+
+    /**
+     * 设置可写状态变化的回调
+     *
+     * @param listener
+     */
+    public void setWritabilityListener(WritabilityListener listener);
+
+    /**
+     * 当前线程是否为连接的io线程.服务端应答由该线程读取,在其中阻塞等待应答只会超时
+     *
+     * @return
+     */
+    public boolean inEventLoop();
+
     public long getConnectingLatency();
 
     public long getWsHandshakeLatency();
 
+    /**
+     * wss连接的tls握手是否复用了之前的会话(session resumption),复用时省去完整握手的一次往返及密钥交换.ws连接总是返回false
+     *
+     * @return
+     */
+    public boolean isSessionResumed();
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 建连重试策略:指数退避加全抖动(full jitter),第n次重试前等待[0, min(maxDelay, baseDelay*2^(n-1))]内的随机时间,
+ * 避免网关抖动时大量会话同步重试.不可恢复的错误(见{@link ConnectErrorType})不重试.
+ * 可继承并覆盖{@link #shouldRetry}或{@link #nextDelayMillis}实现自定义策略
+ */
+public class RetryPolicy {
+    /**
+     * 默认策略,可通过系统属性nls.ws.retry.maxAttempts,nls.ws.retry.baseDelay,nls.ws.retry.maxDelay配置
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(Integer.getInteger("nls.ws.retry.maxAttempts", 3),
+        Long.getLong("nls.ws.retry.baseDelay", 100), Long.getLong("nls.ws.retry.maxDelay", 2000));
+    /**
+     * 不重试
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     最多尝试次数,包括第一次
+     * @param baseDelayMillis 退避基数,单位毫秒
+     * @param maxDelayMillis  单次退避的上限,单位毫秒
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException(
+                "invalid retry policy,maxAttempts:" + maxAttempts + ",baseDelay:" + baseDelayMillis + ",maxDelay:"
+                    + maxDelayMillis);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * 第attempt次尝试失败后是否继续重试
+     *
+     * @param type    失败的错误类型
+     * @param attempt 已尝试的次数,从1开始
+     * @return
+     */
+    public boolean shouldRetry(ConnectErrorType type, int attempt) {
+        return attempt < maxAttempts && type.isRetryable();
+    }
+
+    /**
+     * 第attempt次尝试失败后,到下一次尝试前的等待时间
+     *
+     * @param attempt 已尝试的次数,从1开始
+     * @return 单位毫秒
+     */
+    public long nextDelayMillis(int attempt) {
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (ceiling < baseDelayMillis || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport;
+
+/**
+ * websocket升级失败,服务端没有返回101.携带http状态码,用于区分鉴权失败等不可重试的错误
+ */
+public class WebSocketUpgradeException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String reason;
+
+    public WebSocketUpgradeException(int statusCode, String reason, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.reason = reason;
+    }
+
+    /**
+     * @return 升级请求的http状态码
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return 服务端返回的响应内容
+     */
+    public String getReason() {
+        return reason;
+    }
+}
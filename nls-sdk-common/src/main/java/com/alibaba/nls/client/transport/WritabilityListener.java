@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport;
+
+/**
+ * 连接可写状态变化的回调.待发送数据超过高水位时变为不可写,回落到低水位以下时恢复可写
+ */
+public interface WritabilityListener {
+
+    /**
+     * 在io线程中回调,不要执行耗时操作
+     *
+     * @param writable 当前是否可写
+     */
+    void onWritabilityChanged(boolean writable);
+}
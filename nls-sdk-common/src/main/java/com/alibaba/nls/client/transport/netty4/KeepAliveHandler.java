@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport.netty4;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * websocket心跳:配合{@link IdleStateHandler}使用,连接在interval内没有收到任何数据时发送ping,
+ * pongTimeoutMillis内没有收到pong则认为连接已被nat或负载均衡静默断开,标记失效并关闭连接.
+ * 在websocket升级完成后加入pipeline
+ */
+public class KeepAliveHandler extends ChannelDuplexHandler {
+    private static Logger logger = LoggerFactory.getLogger(KeepAliveHandler.class);
+    private final long pongTimeoutMillis;
+    private ScheduledFuture<?> pongTimeoutFuture;
+    private volatile boolean dead;
+
+    /**
+     * @param pongTimeoutMillis 发送ping后等待pong的超时时间,单位毫秒
+     */
+    public KeepAliveHandler(long pongTimeoutMillis) {
+        this.pongTimeoutMillis = pongTimeoutMillis;
+    }
+
+    /**
+     * 连接是否因心跳超时被判定为失效
+     *
+     * @return
+     */
+    public boolean isDead() {
+        return dead;
+    }
+
+    @Override
+    public void userEventTriggered(final ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent)evt).state() == IdleState.READER_IDLE) {
+            if (pongTimeoutFuture == null) {
+                logger.debug("connection idle,send ping,connectionId:{}", ctx.channel().id());
+                ctx.writeAndFlush(new PingWebSocketFrame());
+                pongTimeoutFuture = ctx.executor().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        pongTimeoutFuture = null;
+                        dead = true;
+                        logger.warn("no pong received in {}ms,close dead connection:{}", pongTimeoutMillis,
+                            ctx.channel().id());
+                        ctx.close();
+                    }
+                }, pongTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        ctx.fireUserEventTriggered(evt);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        //收到pong或其它任何数据都说明连接仍然可用
+        cancelPongTimeout();
+        if (msg instanceof PongWebSocketFrame) {
+            logger.debug("receive pong,connectionId:{}", ctx.channel().id());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelPongTimeout();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancelPongTimeout();
+    }
+
+    private void cancelPongTimeout() {
+        if (pongTimeoutFuture != null) {
+            pongTimeoutFuture.cancel(false);
+            pongTimeoutFuture = null;
+        }
+    }
+}
@@ -16,13 +16,19 @@
 
 package com.alibaba.nls.client.transport.netty4;
 
+import java.nio.ByteBuffer;
+
+import com.alibaba.nls.client.transport.CallbackDispatcher;
 import com.alibaba.nls.client.transport.Connection;
+import com.alibaba.nls.client.transport.ConnectionListener;
+import com.alibaba.nls.client.transport.WritabilityListener;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +42,8 @@ public class NettyConnection implements Connection {
     Channel channel;
     long connectingLatency;
     long handshakeLatency;
+    NettyTransport transport = NettyTransport.NIO;
+    boolean sessionResumed;
 
     public NettyConnection(Channel channel) {
         this.channel = channel;
@@ -47,6 +55,98 @@ public class NettyConnection implements Connection {
         this.handshakeLatency=handshakeLatency;
     }
 
+    public NettyConnection(Channel channel, NettyTransport transport, long connectingLatency, long handshakeLatency) {
+        this(channel, connectingLatency, handshakeLatency);
+        this.transport = transport;
+    }
+
+    public NettyConnection(Channel channel, NettyTransport transport, long connectingLatency, long handshakeLatency,
+                           boolean sessionResumed) {
+        this(channel, transport, connectingLatency, handshakeLatency);
+        this.sessionResumed = sessionResumed;
+    }
+
+    /**
+     * 连接使用的传输层实现,nio或epoll
+     *
+     * @return
+     */
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * 为连接绑定listener,用于连接池中预建的连接在出借时设置
+     *
+     * @param listener
+     */
+    void setListener(ConnectionListener listener) {
+        WebSocketClientHandler handler = handler();
+        if (handler != null) {
+            handler.setListener(listener);
+        }
+    }
+
+    /**
+     * @return 当前排队等待执行的回调数,未使用回调线程池时为0
+     */
+    public int getCallbackQueueSize() {
+        WebSocketClientHandler handler = handler();
+        CallbackDispatcher.SerialQueue queue = handler == null ? null : handler.callbackQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return 最近一次回调的分发延迟,单位毫秒,未使用回调线程池时为0
+     */
+    public double getLastDispatchDelayMillis() {
+        WebSocketClientHandler handler = handler();
+        CallbackDispatcher.SerialQueue queue = handler == null ? null : handler.callbackQueue;
+        return queue == null ? 0 : queue.getLastDispatchDelayMillis();
+    }
+
+    WebSocketClientHandler handler() {
+        return (WebSocketClientHandler)channel.pipeline().get("hookedHandler");
+    }
+
+    @Override
+    public boolean isWritable() {
+        return channel != null && channel.isWritable();
+    }
+
+    @Override
+    public boolean awaitWritable(long timeoutMillis) throws InterruptedException {
+        if (channel == null) {
+            return false;
+        }
+        if (channel.isWritable()) {
+            return true;
+        }
+        WebSocketClientHandler handler = handler();
+        if (handler == null) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (handler.writabilityLock) {
+            while (!channel.isWritable() && channel.isActive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                handler.writabilityLock.wait(remaining);
+            }
+        }
+        return channel.isWritable();
+    }
+
+    @Override
+    public void setWritabilityListener(WritabilityListener listener) {
+        WebSocketClientHandler handler = handler();
+        if (handler != null) {
+            handler.writabilityListener = listener;
+        }
+    }
+
     @Override
     public String getId() {
         if (channel != null) {
@@ -59,11 +159,18 @@ public class NettyConnection implements Connection {
     @Override
     public boolean isActive() {
         if(channel!=null && channel.isActive()){
-            return true;
+            //心跳超时的连接即将关闭,视为不可用
+            KeepAliveHandler keepAlive = channel.pipeline().get(KeepAliveHandler.class);
+            return keepAlive == null || !keepAlive.isDead();
         }
         return  false;
     }
 
+    @Override
+    public boolean inEventLoop() {
+        return channel != null && channel.eventLoop().inEventLoop();
+    }
+
     @Override
     public long getConnectingLatency() {
         return connectingLatency;
@@ -74,6 +181,11 @@ public class NettyConnection implements Connection {
         return handshakeLatency;
     }
 
+    @Override
+    public boolean isSessionResumed() {
+        return sessionResumed;
+    }
+
     @Override
     public void close() {
         channel.close();
@@ -91,11 +203,34 @@ public class NettyConnection implements Connection {
 
     @Override
     public void sendBinary(byte[] payload) {
+        sendBinary(payload, 0, payload.length);
+    }
+
+    @Override
+    public void sendBinary(byte[] payload, int offset, int length) {
         if (channel != null && channel.isActive()) {
-            BinaryWebSocketFrame frame = new BinaryWebSocketFrame(Unpooled.wrappedBuffer(payload));
-            channel.writeAndFlush(frame);
+            ByteBuf buf = channel.alloc().directBuffer(length);
+            buf.writeBytes(payload, offset, length);
+            channel.writeAndFlush(new BinaryWebSocketFrame(buf));
+        }
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer payload) {
+        if (channel != null && channel.isActive()) {
+            ByteBuf buf = channel.alloc().directBuffer(payload.remaining());
+            buf.writeBytes(payload.duplicate());
+            channel.writeAndFlush(new BinaryWebSocketFrame(buf));
         }
+    }
 
+    @Override
+    public void sendBinary(ByteBuf payload) {
+        if (channel != null && channel.isActive()) {
+            channel.writeAndFlush(new BinaryWebSocketFrame(payload));
+        } else {
+            ReferenceCountUtil.release(payload);
+        }
     }
 
     @Override
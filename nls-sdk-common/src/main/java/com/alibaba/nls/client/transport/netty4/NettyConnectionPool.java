@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport.netty4;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.nls.client.transport.Connection;
+import com.alibaba.nls.client.transport.ConnectionListener;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 预建连接池,维护已完成tcp连接及websocket升级的连接,会话创建时直接取用,后台定时补足及剔除失效连接
+ */
+class NettyConnectionPool {
+    private static Logger logger = LoggerFactory.getLogger(NettyConnectionPool.class);
+    /**
+     * 后台维护任务的执行间隔,单位毫秒
+     */
+    private static final long MAINTAIN_INTERVAL = 1000;
+
+    private final NettyWebSocketClient client;
+    private final String token;
+    final int minIdle;
+    final int maxTotal;
+    final long maxIdleMillis;
+    final int connectionTimeout;
+
+    private final ConcurrentLinkedQueue<PooledEntry> idle = new ConcurrentLinkedQueue<PooledEntry>();
+    /**
+     * 连接池创建且尚未关闭的连接数,包括空闲,建立中及已借出的连接
+     */
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+    private ScheduledFuture<?> maintainFuture;
+
+    private static class PooledEntry {
+        final NettyConnection conn;
+        final long createTime;
+
+        PooledEntry(NettyConnection conn) {
+            this.conn = conn;
+            this.createTime = System.currentTimeMillis();
+        }
+    }
+
+    NettyConnectionPool(NettyWebSocketClient client, String token, int minIdle, int maxTotal, long maxIdleMillis,
+                        int connectionTimeout) {
+        if (minIdle < 0 || maxTotal < minIdle) {
+            throw new IllegalArgumentException("invalid pool size,minIdle:" + minIdle + ",maxTotal:" + maxTotal);
+        }
+        this.client = client;
+        this.token = token;
+        this.minIdle = minIdle;
+        this.maxTotal = maxTotal;
+        this.maxIdleMillis = maxIdleMillis;
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    void start() {
+        maintainFuture = client.getGroup().next().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, 0, MAINTAIN_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 连接池中的连接都是用同一个token升级的,其它token的请求不能使用
+     *
+     * @param token
+     * @return
+     */
+    boolean accept(String token) {
+        return !closed && this.token != null && this.token.equals(token);
+    }
+
+    /**
+     * 取出一个可用连接并绑定listener,没有可用连接时返回null,由调用方直接建连
+     *
+     * @param listener
+     * @return
+     */
+    NettyConnection borrow(ConnectionListener listener) {
+        PooledEntry entry;
+        while ((entry = idle.poll()) != null) {
+            if (isUsable(entry)) {
+                entry.conn.setListener(listener);
+                logger.debug("borrow pooled connection:{},idle:{},total:{}", entry.conn.getId(), idle.size(),
+                    total.get());
+                refill();
+                return entry.conn;
+            }
+            entry.conn.close();
+        }
+        refill();
+        return null;
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        if (!entry.conn.isActive()) {
+            return false;
+        }
+        return maxIdleMillis <= 0 || System.currentTimeMillis() - entry.createTime < maxIdleMillis;
+    }
+
+    /**
+     * 剔除失效或空闲过久的连接,并补足最少空闲连接
+     */
+    void maintain() {
+        Iterator<PooledEntry> it = idle.iterator();
+        while (it.hasNext()) {
+            PooledEntry entry = it.next();
+            if (!isUsable(entry) && idle.remove(entry)) {
+                logger.debug("evict pooled connection:{}", entry.conn.getId());
+                entry.conn.close();
+            }
+        }
+        refill();
+    }
+
+    private void refill() {
+        //建连失败可能同步回调,只按进入时的缺口补,避免失败时在此循环
+        int need = minIdle - idle.size() - pending.get();
+        for (int i = 0; i < need && !closed; i++) {
+            int current = total.get();
+            if (current >= maxTotal) {
+                return;
+            }
+            if (!total.compareAndSet(current, current + 1)) {
+                i--;
+                continue;
+            }
+            pending.incrementAndGet();
+            client.doConnect(token, null, connectionTimeout).addListener(
+                new GenericFutureListener<Future<Connection>>() {
+                    @Override
+                    public void operationComplete(Future<Connection> future) {
+                        pending.decrementAndGet();
+                        if (!future.isSuccess()) {
+                            total.decrementAndGet();
+                            logger.warn("failed to create pooled connection:{}", future.cause().getMessage());
+                            return;
+                        }
+                        NettyConnection conn = (NettyConnection)future.getNow();
+                        conn.channel.closeFuture().addListener(new ChannelFutureListener() {
+                            @Override
+                            public void operationComplete(ChannelFuture future) {
+                                total.decrementAndGet();
+                            }
+                        });
+                        if (closed) {
+                            conn.close();
+                            return;
+                        }
+                        idle.offer(new PooledEntry(conn));
+                    }
+                });
+        }
+    }
+
+    void close() {
+        closed = true;
+        if (maintainFuture != null) {
+            maintainFuture.cancel(false);
+        }
+        PooledEntry entry;
+        while ((entry = idle.poll()) != null) {
+            entry.conn.close();
+        }
+    }
+}
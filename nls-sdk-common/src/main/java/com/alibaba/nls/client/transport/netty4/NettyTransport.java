@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport.netty4;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 网络传输层实现.epoll为linux下的native实现,需要自行引入与netty版本一致的io.netty:netty-transport-native-epoll,
+ * 通过反射加载,classpath中没有对应依赖或当前系统不支持时视为不可用.
+ * io_uring需要netty 4.1.5x以上的incubator实现,当前依赖的netty版本不支持
+ */
+public enum NettyTransport {
+    /**
+     * jdk nio,所有平台可用
+     */
+    NIO("nio", null, null, null),
+    /**
+     * linux epoll
+     */
+    EPOLL("epoll", "io.netty.channel.epoll.Epoll", "io.netty.channel.epoll.EpollEventLoopGroup",
+        "io.netty.channel.epoll.EpollSocketChannel");
+
+    private static Logger logger = LoggerFactory.getLogger(NettyTransport.class);
+
+    String name;
+    private String availabilityClass;
+    private String groupClass;
+    private String channelClass;
+    private Boolean available;
+
+    NettyTransport(String name, String availabilityClass, String groupClass, String channelClass) {
+        this.name = name;
+        this.availabilityClass = availabilityClass;
+        this.groupClass = groupClass;
+        this.channelClass = channelClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前环境是否可用
+     *
+     * @return
+     */
+    public synchronized boolean isAvailable() {
+        if (available == null) {
+            if (availabilityClass == null) {
+                available = true;
+            } else {
+                try {
+                    Class<?> clazz = Class.forName(availabilityClass);
+                    available = (Boolean)clazz.getMethod("isAvailable").invoke(null);
+                } catch (Throwable e) {
+                    logger.debug("transport {} is unavailable:{}", name, e.getMessage());
+                    available = false;
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * 创建该传输层的EventLoopGroup
+     *
+     * @param threads 线程数,0表示使用netty默认值(cpu核数*2)
+     * @return
+     */
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        if (groupClass == null) {
+            return new NioEventLoopGroup(threads);
+        }
+        try {
+            return (EventLoopGroup)Class.forName(groupClass).getConstructor(int.class).newInstance(threads);
+        } catch (Exception e) {
+            throw new RuntimeException("fail to create event loop group for transport " + name, e);
+        }
+    }
+
+    /**
+     * 创建该传输层的EventLoopGroup,线程按指定前缀命名,可在多个NlsClient间共享以控制io线程总数
+     *
+     * @param threads          线程数,0表示使用netty默认值(cpu核数*2)
+     * @param threadNamePrefix 线程名前缀
+     * @return
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, String threadNamePrefix) {
+        return newEventLoopGroup(threads, new DefaultThreadFactory(threadNamePrefix));
+    }
+
+    /**
+     * 创建该传输层的EventLoopGroup
+     *
+     * @param threads       线程数,0表示使用netty默认值(cpu核数*2)
+     * @param threadFactory 线程工厂
+     * @return
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        if (groupClass == null) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+        try {
+            return (EventLoopGroup)Class.forName(groupClass).getConstructor(int.class, ThreadFactory.class)
+                .newInstance(threads, threadFactory);
+        } catch (Exception e) {
+            throw new RuntimeException("fail to create event loop group for transport " + name, e);
+        }
+    }
+
+    /**
+     * 该传输层对应的SocketChannel实现
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends SocketChannel> socketChannelClass() {
+        if (channelClass == null) {
+            return NioSocketChannel.class;
+        }
+        try {
+            return (Class<? extends SocketChannel>)Class.forName(channelClass);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("fail to load socket channel for transport " + name, e);
+        }
+    }
+
+    /**
+     * 根据EventLoopGroup的类型识别传输层,用于外部传入的group
+     *
+     * @param group NioEventLoopGroup,EpollEventLoopGroup或它们的子类
+     * @return
+     * @throws IllegalArgumentException 不支持的group类型
+     */
+    public static NettyTransport of(EventLoopGroup group) {
+        if (group instanceof NioEventLoopGroup) {
+            return NIO;
+        }
+        for (NettyTransport transport : values()) {
+            if (transport.groupClass != null && transport.isGroup(group)) {
+                return transport;
+            }
+        }
+        throw new IllegalArgumentException("unsupported event loop group:" + group.getClass().getName());
+    }
+
+    private boolean isGroup(EventLoopGroup group) {
+        try {
+            return Class.forName(groupClass).isInstance(group);
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 根据名称选择传输层
+     *
+     * @param name auto,nio,epoll.auto时依次尝试epoll,nio;指定的传输层不可用时退回nio
+     * @return
+     */
+    public static NettyTransport select(String name) {
+        if (name == null || "auto".equalsIgnoreCase(name)) {
+            return EPOLL.isAvailable() ? EPOLL : NIO;
+        }
+        for (NettyTransport transport : values()) {
+            if (transport.name.equalsIgnoreCase(name)) {
+                if (transport.isAvailable()) {
+                    return transport;
+                }
+                logger.warn("transport {} is unavailable,fall back to nio", name);
+                return NIO;
+            }
+        }
+        throw new IllegalArgumentException("unknown transport:" + name);
+    }
+}
@@ -17,20 +17,34 @@
 package com.alibaba.nls.client.transport.netty4;
 
 import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLException;
 
 import com.alibaba.nls.client.protocol.Constant;
+import com.alibaba.nls.client.transport.CallbackDispatcher;
 import com.alibaba.nls.client.transport.Connection;
+import com.alibaba.nls.client.transport.ConnectErrorType;
 import com.alibaba.nls.client.transport.ConnectionListener;
+import com.alibaba.nls.client.transport.RetryPolicy;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -40,8 +54,17 @@ import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
 import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,30 +75,122 @@ import org.slf4j.LoggerFactory;
  */
 public final class NettyWebSocketClient {
     private static Logger logger = LoggerFactory.getLogger(NettyWebSocketClient.class);
+    /**
+     * 所有client共享的SslContext,按provider缓存.共享同一个SslContext才能共享tls会话缓存,重连时复用会话
+     */
+    private static final Map<SslProvider, SslContext> SSL_CONTEXTS = new EnumMap<SslProvider, SslContext>(
+        SslProvider.class);
     private URI websocketURI;
     private int port;
     private SslContext sslCtx;
-    EventLoopGroup group = new NioEventLoopGroup(0);
+    private NettyTransport transport;
+    EventLoopGroup group;
+    /**
+     * group是否由本client创建,只有自己创建的group才在shutdown时关闭
+     */
+    private boolean ownGroup;
     Bootstrap bootstrap = new Bootstrap();
+    private volatile NettyConnectionPool pool;
+    /**
+     * 写合并配置,coalesceDelayMillis大于0时开启,见{@link WriteCoalescingHandler}
+     */
+    private volatile long coalesceDelayMillis = Long.getLong("nls.ws.coalesce.delay", 0);
+    private volatile int coalesceFlushBytes = Integer.getInteger("nls.ws.coalesce.flushBytes", 16384);
+    private volatile int coalesceFrameSize = Integer.getInteger("nls.ws.coalesce.frameSize", 0);
+    /**
+     * 写缓冲水位,单位字节,待发送数据超过高水位时连接变为不可写,回落到低水位以下时恢复
+     */
+    private volatile WriteBufferWaterMark waterMark = new WriteBufferWaterMark(
+        Integer.getInteger("nls.ws.writeBuffer.low", 32 * 1024),
+        Integer.getInteger("nls.ws.writeBuffer.high", 64 * 1024));
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    /**
+     * 心跳配置,keepAliveIntervalMillis大于0时开启,见{@link KeepAliveHandler}
+     */
+    private volatile long keepAliveIntervalMillis = Long.getLong("nls.ws.keepalive.interval", 0);
+    private volatile long keepAliveTimeoutMillis = Long.getLong("nls.ws.keepalive.timeout", 5000);
+    /**
+     * 为null时listener回调直接在io线程中执行
+     */
+    private volatile CallbackDispatcher callbackDispatcher;
+    /**
+     * 由系统属性nls.ws.callback.threads创建的回调线程池,shutdown时关闭
+     */
+    private ExecutorService ownCallbackExecutor;
 
     public NettyWebSocketClient(final String uriStr) throws Exception {
+        this(uriStr, NettyTransport.select(System.getProperty("nls.ws.transport", "auto")));
+    }
+
+    /**
+     * @param uriStr
+     * @param transport 使用的传输层实现,不可用时退回nio
+     * @throws Exception
+     */
+    public NettyWebSocketClient(final String uriStr, NettyTransport transport) throws Exception {
+        this(uriStr, availableOrNio(transport), null);
+    }
+
+    /**
+     * @param uriStr
+     * @param transport 传输层名称,见{@link NettyTransport#select(String)}
+     * @throws Exception
+     */
+    public NettyWebSocketClient(final String uriStr, String transport) throws Exception {
+        this(uriStr, NettyTransport.select(transport));
+    }
+
+    /**
+     * 使用外部传入的EventLoopGroup,多个client共享同一个group时io线程数不随client数量增长.
+     * 传入的group由调用方负责关闭,{@link #shutdown()}不会关闭它
+     *
+     * @param uriStr
+     * @param group  由{@link NettyTransport#newEventLoopGroup(int, String)}等方式创建
+     * @throws Exception group不是nio或epoll的实现时抛出IllegalArgumentException
+     */
+    public NettyWebSocketClient(final String uriStr, EventLoopGroup group) throws Exception {
+        this(uriStr, NettyTransport.of(group), group);
+    }
+
+    private NettyWebSocketClient(final String uriStr, NettyTransport transport, EventLoopGroup group)
+        throws Exception {
         this.websocketURI = new URI(uriStr);
+        this.transport = transport;
+        if (group == null) {
+            int threads = Integer.getInteger("nls.ws.io.threads", 0);
+            this.group = transport.newEventLoopGroup(threads, "nls-ws-" + transport.getName());
+            this.ownGroup = true;
+        } else {
+            this.group = group;
+            this.ownGroup = false;
+        }
+        logger.info("websocket client use transport:{},own event loop group:{}", transport.getName(), ownGroup);
+        int callbackThreads = Integer.getInteger("nls.ws.callback.threads", 0);
+        if (callbackThreads > 0) {
+            ownCallbackExecutor = Executors.newFixedThreadPool(callbackThreads,
+                new DefaultThreadFactory("nls-callback", true));
+            callbackDispatcher = new CallbackDispatcher(ownCallbackExecutor);
+        }
         final boolean ssl = "wss".equalsIgnoreCase(websocketURI.getScheme());
         port = websocketURI.getPort();
         if (ssl) {
-            sslCtx = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+            sslCtx = sharedSslContext(selectSslProvider(System.getProperty("nls.ws.ssl.provider", "jdk")));
             if (port == -1) {
                 port = 443;
             }
+        } else if (port == -1) {
+            port = 80;
         }
         final String isCompression = System.getProperty("nls.ws.compression", "false");
         bootstrap.option(ChannelOption.TCP_NODELAY, true)
-            .group(group).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+            .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+            .group(this.group).channel(transport.socketChannelClass()).handler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) {
                 ChannelPipeline p = ch.pipeline();
                 if (sslCtx != null) {
-                    p.addLast(sslCtx.newHandler(ch.alloc(), websocketURI.getHost(), 443));
+                    //带上对端地址,jdk实现按host:port查找可复用的会话
+                    p.addLast(sslCtx.newHandler(ch.alloc(), websocketURI.getHost(), port));
                 }
                 if ("true".equalsIgnoreCase(isCompression)) {
                     p.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192),
@@ -84,6 +199,10 @@ public final class NettyWebSocketClient {
                     p.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192));
                 }
 
+                if (coalesceDelayMillis > 0) {
+                    p.addLast("writeCoalescing",
+                        new WriteCoalescingHandler(coalesceDelayMillis, coalesceFlushBytes, coalesceFrameSize));
+                }
                 p.addLast("hookedHandler", new WebSocketClientHandler());
 
             }
@@ -92,28 +211,339 @@ public final class NettyWebSocketClient {
     }
 
     public Connection connect(String token, ConnectionListener listener, int connectionTimeout) throws Exception {
-        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeout);
+        return connectAsync(token, listener, connectionTimeout).sync().getNow();
+    }
+
+    /**
+     * 异步建立连接,依次完成tcp连接,tls握手及websocket升级,不阻塞调用线程.开启连接池时优先使用池中的连接.
+     * 失败时按{@link RetryPolicy}在io线程的定时器上重试
+     *
+     * @param token
+     * @param listener
+     * @param connectionTimeout tcp连接及websocket升级各自的超时时间,单位毫秒
+     * @return
+     */
+    public Future<Connection> connectAsync(String token, ConnectionListener listener, int connectionTimeout) {
+        NettyConnectionPool pool = this.pool;
+        if (pool != null && pool.accept(token)) {
+            NettyConnection conn = pool.borrow(listener);
+            if (conn != null) {
+                bindCallbackQueue(conn.handler());
+                return conn.channel.eventLoop().newSucceededFuture((Connection)conn);
+            }
+        }
+        Promise<Connection> promise = group.next().newPromise();
+        connectWithRetry(token, listener, connectionTimeout, retryPolicy, 1, promise);
+        return promise;
+    }
+
+    private void connectWithRetry(final String token, final ConnectionListener listener, final int connectionTimeout,
+                                  final RetryPolicy policy, final int attempt, final Promise<Connection> promise) {
+        doConnect(token, listener, connectionTimeout).addListener(new GenericFutureListener<Future<Connection>>() {
+            @Override
+            public void operationComplete(Future<Connection> future) {
+                if (future.isSuccess()) {
+                    if (!promise.trySuccess(future.getNow())) {
+                        future.getNow().close();
+                    }
+                    return;
+                }
+                Throwable cause = future.cause();
+                ConnectErrorType type = ConnectErrorType.of(cause);
+                if (promise.isDone() || !policy.shouldRetry(type, attempt)) {
+                    logger.error("failed to connect to server after {} tries,type:{},error msg is :{}", attempt, type,
+                        cause.getMessage());
+                    promise.tryFailure(cause);
+                    return;
+                }
+                long delay = policy.nextDelayMillis(attempt);
+                logger.warn("failed to connect to server the {} time,type:{},error:{} ,try again after {}ms", attempt,
+                    type, cause.getMessage(), delay);
+                try {
+                    group.next().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            connectWithRetry(token, listener, connectionTimeout, policy, attempt + 1, promise);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    //group已关闭
+                    promise.tryFailure(cause);
+                }
+            }
+        });
+    }
+
+    /**
+     * 建立一个新连接
+     *
+     * @param token
+     * @param listener          可以为null,由连接池预建连接时在出借时再设置
+     * @param connectionTimeout tcp连接及websocket升级各自的超时时间,单位毫秒
+     * @return
+     */
+    Future<Connection> doConnect(String token, final ConnectionListener listener, final int connectionTimeout) {
+        final Promise<Connection> promise = group.next().newPromise();
         HttpHeaders httpHeaders = new DefaultHttpHeaders();
         httpHeaders.set(Constant.HEADER_TOKEN, token);
-        WebSocketClientHandshaker handshaker = WebSocketClientHandshakerFactory
+        final WebSocketClientHandshaker handshaker = WebSocketClientHandshakerFactory
             .newHandshaker(websocketURI, WebSocketVersion.V13, null, true, httpHeaders);
-        long start=System.currentTimeMillis();
-        Channel channel = bootstrap.connect(websocketURI.getHost(), port).sync().channel();
-        long connectingTime=System.currentTimeMillis()-start;
-        logger.debug("websocket channel is established after sync,connectionId:{} ,use {}", channel.id(),connectingTime);
-        WebSocketClientHandler handler = (WebSocketClientHandler)channel.pipeline().get("hookedHandler");
-        handler.setListener(listener);
-        handler.setHandshaker(handshaker);
-        handshaker.handshake(channel);
-        start=System.currentTimeMillis();
-        handler.handshakeFuture().sync();
-        long handshakeTime=System.currentTimeMillis()-start;
-        logger.debug("websocket connection is established after handshake,connectionId:{},use {}", channel.id(),handshakeTime);
-        return new NettyConnection(channel,connectingTime,handshakeTime);
+        final long start = System.currentTimeMillis();
+        Bootstrap b = bootstrap.clone().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeout)
+            .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+        b.connect(websocketURI.getHost(), port).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                final Channel channel = future.channel();
+                final long connectingTime = System.currentTimeMillis() - start;
+                logger.debug("websocket channel is established,connectionId:{} ,use {}", channel.id(),
+                    connectingTime);
+                WebSocketClientHandler handler = (WebSocketClientHandler)channel.pipeline().get("hookedHandler");
+                handler.setListener(listener);
+                handler.setHandshaker(handshaker);
+                bindCallbackQueue(handler);
+                final long handshakeStart = System.currentTimeMillis();
+                handshaker.handshake(channel);
+                final ScheduledFuture<?> timeoutFuture = channel.eventLoop().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (promise.tryFailure(new TimeoutException(
+                            "websocket handshake timeout after " + connectionTimeout + "ms,connectionId:"
+                                + channel.id()))) {
+                            channel.close();
+                        }
+                    }
+                }, connectionTimeout, TimeUnit.MILLISECONDS);
+                handler.handshakeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        timeoutFuture.cancel(false);
+                        if (!future.isSuccess()) {
+                            promise.tryFailure(future.cause());
+                            channel.close();
+                            return;
+                        }
+                        addKeepAlive(channel);
+                        long handshakeTime = System.currentTimeMillis() - handshakeStart;
+                        logger.debug("websocket connection is established after handshake,connectionId:{},use {}",
+                            channel.id(), handshakeTime);
+                        //复用的会话创建于本次建连之前
+                        SslHandler sslHandler = channel.pipeline().get(SslHandler.class);
+                        boolean resumed = sslHandler != null
+                            && sslHandler.engine().getSession().getCreationTime() < start;
+                        logger.debug("tls session resumed:{},connectionId:{}", resumed, channel.id());
+                        if (!promise.trySuccess(new NettyConnection(channel, transport, connectingTime,
+                            handshakeTime, resumed))) {
+                            channel.close();
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    private void bindCallbackQueue(WebSocketClientHandler handler) {
+        CallbackDispatcher dispatcher = callbackDispatcher;
+        if (handler != null) {
+            handler.callbackQueue = dispatcher == null ? null : dispatcher.newQueue();
+        }
+    }
+
+    private void addKeepAlive(Channel channel) {
+        long interval = keepAliveIntervalMillis;
+        if (interval <= 0) {
+            return;
+        }
+        channel.pipeline().addBefore("hookedHandler", "idleState",
+            new IdleStateHandler(interval, 0, 0, TimeUnit.MILLISECONDS));
+        channel.pipeline().addBefore("hookedHandler", "keepAlive", new KeepAliveHandler(keepAliveTimeoutMillis));
+    }
+
+    /**
+     * 开启连接池,预先建立并完成websocket升级的连接,在创建会话时直接取用
+     *
+     * @param token             建立连接使用的token
+     * @param minIdle           最少空闲连接数
+     * @param maxTotal          连接池维护的最大连接数,包括已借出但未关闭的连接
+     * @param maxIdleMillis     空闲连接的最长保留时间,单位毫秒,超过后关闭并重建
+     * @param connectionTimeout 建立连接的超时时间,单位毫秒
+     */
+    public synchronized void enablePool(String token, int minIdle, int maxTotal, long maxIdleMillis,
+                                        int connectionTimeout) {
+        if (pool != null) {
+            pool.close();
+        }
+        pool = new NettyConnectionPool(this, token, minIdle, maxTotal, maxIdleMillis, connectionTimeout);
+        pool.start();
+    }
+
+    /**
+     * 关闭连接池,空闲连接将被关闭
+     */
+    public synchronized void disablePool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * token更新后,用新token重建池中的空闲连接
+     *
+     * @param token
+     */
+    public synchronized void resetPoolToken(String token) {
+        if (pool != null) {
+            enablePool(token, pool.minIdle, pool.maxTotal, pool.maxIdleMillis, pool.connectionTimeout);
+        }
+    }
+
+    /**
+     * 开启出站写合并,对之后新建的连接生效
+     *
+     * @param maxDelayMillis 音频帧最多延迟多久发出,单位毫秒,小于等于0表示关闭写合并
+     * @param flushBytes     累计未发出的字节数达到该值时立即发出
+     * @param mergeFrameSize 将连续的小音频帧合并为该大小的二进制帧,小于等于0表示不合并帧.仅适用于pcm等可任意切分的格式
+     */
+    public void setWriteCoalescing(long maxDelayMillis, int flushBytes, int mergeFrameSize) {
+        this.coalesceFlushBytes = flushBytes;
+        this.coalesceFrameSize = mergeFrameSize;
+        this.coalesceDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * 设置写缓冲水位,对之后新建的连接生效
+     *
+     * @param low  低水位,单位字节
+     * @param high 高水位,单位字节
+     */
+    public void setWriteBufferWaterMark(int low, int high) {
+        this.waterMark = new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * 开启心跳,对之后新建的连接生效
+     *
+     * @param intervalMillis    连接在该时间内没有收到数据时发送ping,单位毫秒,小于等于0表示关闭心跳
+     * @param pongTimeoutMillis 发送ping后等待pong的超时时间,超时后关闭连接,单位毫秒
+     */
+    public void setKeepAlive(long intervalMillis, long pongTimeoutMillis) {
+        this.keepAliveTimeoutMillis = pongTimeoutMillis;
+        this.keepAliveIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * 设置执行listener回调的线程池,同一连接的回调串行执行.对之后建立或从连接池取出的连接生效
+     *
+     * @param executor 为null时回调直接在io线程中执行
+     */
+    public synchronized void setCallbackExecutor(Executor executor) {
+        if (ownCallbackExecutor != null && ownCallbackExecutor != executor) {
+            ownCallbackExecutor.shutdown();
+            ownCallbackExecutor = null;
+        }
+        this.callbackDispatcher = executor == null ? null : new CallbackDispatcher(executor);
+    }
+
+    /**
+     * @return 回调分发器,可获取排队深度及分发延迟等统计;未设置回调线程池时返回null
+     */
+    public CallbackDispatcher getCallbackDispatcher() {
+        return callbackDispatcher;
+    }
+
+    /**
+     * 设置建连重试策略,对之后的建连生效
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy == null ? RetryPolicy.NONE : retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
+    EventLoopGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * 选择tls实现
+     *
+     * @param name jdk,openssl或auto.openssl需要自行引入netty-tcnative依赖,不可用时退回jdk;auto时优先openssl
+     * @return
+     */
+    static SslProvider selectSslProvider(String name) {
+        if ("openssl".equalsIgnoreCase(name) || "auto".equalsIgnoreCase(name)) {
+            if (OpenSsl.isAvailable()) {
+                return SslProvider.OPENSSL;
+            }
+            if ("openssl".equalsIgnoreCase(name)) {
+                logger.warn("openssl is unavailable,fall back to jdk:{}", OpenSsl.unavailabilityCause().getMessage());
+            }
+            return SslProvider.JDK;
+        }
+        if (!"jdk".equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("unknown ssl provider:" + name);
+        }
+        return SslProvider.JDK;
+    }
+
+    /**
+     * 获取共享的SslContext,会话缓存大小及超时可通过系统属性nls.ws.ssl.sessionCacheSize,nls.ws.ssl.sessionTimeout配置,
+     * 0表示使用实现的默认值
+     *
+     * @param provider
+     * @return
+     * @throws SSLException
+     */
+    static synchronized SslContext sharedSslContext(SslProvider provider) throws SSLException {
+        SslContext ctx = SSL_CONTEXTS.get(provider);
+        if (ctx == null) {
+            ctx = SslContextBuilder.forClient().sslProvider(provider)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .sessionCacheSize(Long.getLong("nls.ws.ssl.sessionCacheSize", 0))
+                .sessionTimeout(Long.getLong("nls.ws.ssl.sessionTimeout", 0))
+                .build();
+            SSL_CONTEXTS.put(provider, ctx);
+            logger.info("create shared ssl context,provider:{}", provider);
+        }
+        return ctx;
+    }
+
+    private static NettyTransport availableOrNio(NettyTransport transport) {
+        if (!transport.isAvailable()) {
+            logger.warn("transport {} is unavailable,fall back to nio", transport.getName());
+            return NettyTransport.NIO;
+        }
+        return transport;
+    }
+
+    public boolean isOwnGroup() {
+        return ownGroup;
     }
 
     public void shutdown() {
-        group.shutdownGracefully();
+        disablePool();
+        if (ownGroup) {
+            group.shutdownGracefully();
+        }
+        synchronized (this) {
+            if (ownCallbackExecutor != null) {
+                ownCallbackExecutor.shutdown();
+            }
+        }
     }
 
 }
@@ -16,7 +16,12 @@
 
 package com.alibaba.nls.client.transport.netty4;
 
+import java.nio.ByteBuffer;
+
+import com.alibaba.nls.client.transport.CallbackDispatcher;
 import com.alibaba.nls.client.transport.ConnectionListener;
+import com.alibaba.nls.client.transport.WebSocketUpgradeException;
+import com.alibaba.nls.client.transport.WritabilityListener;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -47,10 +52,19 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         this.listener = listener;
     }
 
-    ConnectionListener listener;
+    volatile ConnectionListener listener;
 
     private WebSocketClientHandshaker handshaker;
     private ChannelPromise handshakeFuture;
+    /**
+     * 等待连接恢复可写的线程在此对象上等待
+     */
+    final Object writabilityLock = new Object();
+    volatile WritabilityListener writabilityListener;
+    /**
+     * 不为null时listener回调在该队列中串行执行,否则直接在io线程中执行
+     */
+    volatile CallbackDispatcher.SerialQueue callbackQueue;
 
     public WebSocketClientHandler() {
 
@@ -79,8 +93,25 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         logger.debug("channel active,id:{},{}", ctx.channel().id(), Thread.currentThread().getId());
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        boolean writable = ctx.channel().isWritable();
+        logger.debug("channel writability changed,id:{},writable:{}", ctx.channel().id(), writable);
+        synchronized (writabilityLock) {
+            writabilityLock.notifyAll();
+        }
+        WritabilityListener listener = writabilityListener;
+        if (listener != null) {
+            listener.onWritabilityChanged(writable);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
+        synchronized (writabilityLock) {
+            writabilityLock.notifyAll();
+        }
         if (ctx.channel() != null) {
             logger.debug("channelInactive:" + ctx.channel().id());
         } else {
@@ -96,9 +127,55 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
             logger.debug(errorMsg);
             handshakeFuture.setFailure(new Exception(errorMsg));
         }
+        ConnectionListener listener = this.listener;
         if (listener != null) {
-            listener.onClose(-1, "channelInactive");
+            fireClose(listener, -1, "channelInactive");
+        }
+    }
+
+    private void fireText(final ConnectionListener listener, final String text) {
+        CallbackDispatcher.SerialQueue queue = callbackQueue;
+        if (queue == null) {
+            listener.onMessage(text);
+            return;
+        }
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMessage(text);
+            }
+        });
+    }
+
+    private void fireBinary(final ConnectionListener listener, ByteBuffer data) {
+        CallbackDispatcher.SerialQueue queue = callbackQueue;
+        if (queue == null) {
+            listener.onMessage(data);
+            return;
         }
+        //帧在回调执行前就会被释放,需要复制
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data).flip();
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMessage(copy);
+            }
+        });
+    }
+
+    private void fireClose(final ConnectionListener listener, final int code, final String reason) {
+        CallbackDispatcher.SerialQueue queue = callbackQueue;
+        if (queue == null) {
+            listener.onClose(code, reason);
+            return;
+        }
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onClose(code, reason);
+            }
+        });
     }
 
     @Override
@@ -113,10 +190,11 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
                     response.headers());
             } catch (WebSocketHandshakeException e) {
                 FullHttpResponse res = (FullHttpResponse)msg;
+                String reason = res.content().toString(CharsetUtil.UTF_8);
                 String errorMsg = String.format("WebSocket Client failed to connect,status:%s,reason:%s", res.status(),
-                    res.content().toString(CharsetUtil.UTF_8));
+                    reason);
                 logger.error(errorMsg);
-                handshakeFuture.setFailure(new Exception(errorMsg));
+                handshakeFuture.setFailure(new WebSocketUpgradeException(res.status().code(), reason, errorMsg));
             }
             return;
         }
@@ -129,17 +207,26 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         }
 
         WebSocketFrame frame = (WebSocketFrame)msg;
+        ConnectionListener listener = this.listener;
+        if (listener == null) {
+            //连接池中尚未出借的连接
+            logger.debug("no listener bound,connectionId:{},drop frame:{}", ch.id(), frame);
+            if (frame instanceof CloseWebSocketFrame) {
+                ch.close();
+            }
+            return;
+        }
         if (frame instanceof TextWebSocketFrame) {
             TextWebSocketFrame textFrame = (TextWebSocketFrame)frame;
-            listener.onMessage(textFrame.text());
+            fireText(listener, textFrame.text());
         } else if (frame instanceof BinaryWebSocketFrame) {
             BinaryWebSocketFrame binFrame = (BinaryWebSocketFrame)frame;
-            listener.onMessage(binFrame.content().nioBuffer());
+            fireBinary(listener, binFrame.content().nioBuffer());
         } else if (frame instanceof PongWebSocketFrame) {
             logger.debug("WebSocket Client received pong");
         } else if (frame instanceof CloseWebSocketFrame) {
             logger.debug("receive close frame");
-            listener.onClose(((CloseWebSocketFrame)frame).statusCode(), ((CloseWebSocketFrame)frame).reasonText());
+            fireClose(listener, ((CloseWebSocketFrame)frame).statusCode(), ((CloseWebSocketFrame)frame).reasonText());
             ch.close();
         }
     }
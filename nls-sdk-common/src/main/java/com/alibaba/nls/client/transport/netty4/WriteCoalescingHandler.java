@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.transport.netty4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * 出站写合并:
+ * <ul>
+ * <li>音频帧的flush延迟到累计字节数达到flushBytes或等待超过maxDelayMillis时再执行,减少系统调用</li>
+ * <li>mergeFrameSize大于0时,将连续的小音频帧合并为一个接近mergeFrameSize的二进制帧,减少帧开销.
+ * 仅适用于pcm等可以任意切分的音频格式</li>
+ * </ul>
+ * 文本帧等控制消息会立即连同之前的音频一起发出,保证消息顺序及start/stop指令的时效
+ */
+public class WriteCoalescingHandler extends ChannelOutboundHandlerAdapter {
+    private final long maxDelayMillis;
+    private final int flushBytes;
+    private final int mergeFrameSize;
+
+    private ByteBuf merging;
+    private List<ChannelPromise> mergingPromises;
+    private int pendingBytes;
+    private boolean urgent;
+    private ScheduledFuture<?> flushFuture;
+
+    /**
+     * @param maxDelayMillis 音频帧写入后最多等待多久flush,单位毫秒
+     * @param flushBytes     累计未flush的字节数达到该值时立即flush
+     * @param mergeFrameSize 合并后二进制帧的目标大小,小于等于0表示不合并
+     */
+    public WriteCoalescingHandler(long maxDelayMillis, int flushBytes, int mergeFrameSize) {
+        this.maxDelayMillis = maxDelayMillis;
+        this.flushBytes = flushBytes;
+        this.mergeFrameSize = mergeFrameSize;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof BinaryWebSocketFrame) {
+            BinaryWebSocketFrame frame = (BinaryWebSocketFrame)msg;
+            if (mergeFrameSize > 0 && frame.isFinalFragment()) {
+                merge(ctx, frame, promise);
+                return;
+            }
+            writeMerged(ctx);
+            pendingBytes += frame.content().readableBytes();
+            ctx.write(msg, promise);
+            return;
+        }
+        writeMerged(ctx);
+        if (msg instanceof ByteBufHolder) {
+            pendingBytes += ((ByteBufHolder)msg).content().readableBytes();
+        }
+        urgent = true;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (urgent || pendingBytes >= flushBytes) {
+            flushNow(ctx);
+        } else {
+            scheduleFlush(ctx);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushNow(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancelFlush();
+        if (merging != null) {
+            merging.release();
+            merging = null;
+            for (ChannelPromise p : mergingPromises) {
+                p.tryFailure(new IllegalStateException("channel closed before merged frame was written"));
+            }
+            mergingPromises = null;
+        }
+    }
+
+    private void merge(ChannelHandlerContext ctx, BinaryWebSocketFrame frame, ChannelPromise promise) {
+        try {
+            if (merging == null) {
+                merging = ctx.alloc().directBuffer(mergeFrameSize);
+                mergingPromises = new ArrayList<ChannelPromise>();
+            }
+            merging.writeBytes(frame.content());
+        } finally {
+            frame.release();
+        }
+        mergingPromises.add(promise);
+        if (merging.readableBytes() >= mergeFrameSize) {
+            writeMerged(ctx);
+        }
+        scheduleFlush(ctx);
+    }
+
+    private void writeMerged(ChannelHandlerContext ctx) {
+        if (merging == null) {
+            return;
+        }
+        final List<ChannelPromise> promises = mergingPromises;
+        BinaryWebSocketFrame frame = new BinaryWebSocketFrame(merging);
+        pendingBytes += merging.readableBytes();
+        merging = null;
+        mergingPromises = null;
+        ctx.write(frame).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                for (ChannelPromise p : promises) {
+                    if (future.isSuccess()) {
+                        p.trySuccess();
+                    } else {
+                        p.tryFailure(future.cause());
+                    }
+                }
+            }
+        });
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        cancelFlush();
+        writeMerged(ctx);
+        pendingBytes = 0;
+        urgent = false;
+        ctx.flush();
+    }
+
+    private void scheduleFlush(final ChannelHandlerContext ctx) {
+        if (flushFuture != null) {
+            return;
+        }
+        flushFuture = ctx.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushFuture = null;
+                flushNow(ctx);
+            }
+        }, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelFlush() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+    }
+}
@@ -17,14 +17,74 @@
 package com.alibaba.nls.client.util;
 
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author zhishen.ml
  * @date 2017/11/02
  *
+ * 生成32位十六进制的id,格式与去掉"-"的UUID相同
  */
 public class IdGen {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 默认生成器,使用ThreadLocalRandom,无锁且不会因熵不足阻塞,适合高并发创建会话
+     */
+    public static final IdGenerator RANDOM = new IdGenerator() {
+        @Override
+        public String genId() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return format(random.nextLong(), random.nextLong());
+        }
+    };
+
+    /**
+     * 基于SecureRandom的UUID,id需要不可预测时使用
+     */
+    public static final IdGenerator SECURE = new IdGenerator() {
+        @Override
+        public String genId() {
+            UUID uuid = UUID.randomUUID();
+            return format(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+    };
+
+    private static volatile IdGenerator generator = RANDOM;
+
     public static String genId() {
-        return UUID.randomUUID().toString().replaceAll("-", "");
+        return generator.genId();
+    }
+
+    /**
+     * 替换id生成器,对之后生成的id生效
+     *
+     * @param idGenerator
+     */
+    public static void setGenerator(IdGenerator idGenerator) {
+        if (idGenerator == null) {
+            throw new IllegalArgumentException("id generator is null");
+        }
+        generator = idGenerator;
+    }
+
+    public static IdGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * 按UUID version 4的格式设置版本及变体位后输出为32位十六进制
+     */
+    private static String format(long msb, long lsb) {
+        msb = (msb & ~0xF000L) | 0x4000L;
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        char[] buf = new char[32];
+        for (int i = 15; i >= 0; i--) {
+            buf[i] = HEX[(int)(msb & 0xF)];
+            msb >>>= 4;
+            buf[i + 16] = HEX[(int)(lsb & 0xF)];
+            lsb >>>= 4;
+        }
+        return new String(buf);
     }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+/**
+ * task_id及message_id生成器,可通过{@link IdGen#setGenerator(IdGenerator)}替换
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成32位小写十六进制字符串,需要线程安全
+     *
+     * @return
+     */
+    String genId();
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 轻量json扫描:在json原文上按字段名定位值的位置,只解码需要的字段,不构建中间对象.
+ * 值的位置用long表示,高32位为起始下标,低32位为结束下标(不含),{@link #NOT_FOUND}表示字段不存在
+ */
+public final class JsonScanner {
+    public static final long NOT_FOUND = -1L;
+
+    private JsonScanner() {
+    }
+
+    public static int start(long range) {
+        return (int)(range >>> 32);
+    }
+
+    public static int end(long range) {
+        return (int)range;
+    }
+
+    public static long range(int start, int end) {
+        return ((long)start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 整个json的范围
+     *
+     * @param json
+     * @return
+     */
+    public static long whole(String json) {
+        int start = skipWhitespace(json, 0, json.length());
+        int end = json.length();
+        while (end > start && isWhitespace(json.charAt(end - 1))) {
+            end--;
+        }
+        return range(start, end);
+    }
+
+    /**
+     * 在顶层json对象中查找字段
+     *
+     * @param json
+     * @param key
+     * @return 值的范围,不存在时返回{@link #NOT_FOUND}
+     */
+    public static long find(String json, String key) {
+        return find(json, whole(json), key);
+    }
+
+    /**
+     * 在指定范围的json对象中查找字段,只扫描该对象的直接字段,嵌套对象整体跳过
+     *
+     * @param json
+     * @param object 对象的范围,为{@link #NOT_FOUND}时返回{@link #NOT_FOUND}
+     * @param key
+     * @return 值的范围,不存在或object不是对象时返回{@link #NOT_FOUND}
+     */
+    public static long find(String json, long object, String key) {
+        if (object == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        int end = end(object);
+        int i = skipWhitespace(json, start(object), end);
+        if (i >= end || json.charAt(i) != '{') {
+            return NOT_FOUND;
+        }
+        i = skipWhitespace(json, i + 1, end);
+        if (i < end && json.charAt(i) == '}') {
+            return NOT_FOUND;
+        }
+        while (i < end) {
+            if (json.charAt(i) != '"') {
+                throw malformed(json, i);
+            }
+            int keyEnd = skipString(json, i, end);
+            boolean matched = keyEnd - i - 2 == key.length() && json.regionMatches(i + 1, key, 0, key.length());
+            i = skipWhitespace(json, keyEnd, end);
+            if (i >= end || json.charAt(i) != ':') {
+                throw malformed(json, i);
+            }
+            int valueStart = skipWhitespace(json, i + 1, end);
+            int valueEnd = skipValue(json, valueStart, end);
+            if (matched) {
+                return range(valueStart, valueEnd);
+            }
+            i = skipWhitespace(json, valueEnd, end);
+            if (i < end && json.charAt(i) == ',') {
+                i = skipWhitespace(json, i + 1, end);
+            } else if (i < end && json.charAt(i) == '}') {
+                return NOT_FOUND;
+            } else {
+                throw malformed(json, i);
+            }
+        }
+        throw malformed(json, i);
+    }
+
+    /**
+     * 值的第一个字符,用于判断类型:'"'字符串,'{'对象,'['数组,'n'null,'t'/'f'布尔,其它为数字
+     *
+     * @param json
+     * @param range
+     * @return
+     */
+    public static char type(String json, long range) {
+        return json.charAt(start(range));
+    }
+
+    public static boolean isNull(String json, long range) {
+        return range == NOT_FOUND || json.startsWith("null", start(range));
+    }
+
+    /**
+     * 读取字符串值,非字符串类型的值返回其原文,null返回null
+     *
+     * @param json
+     * @param range
+     * @return
+     */
+    public static String readString(String json, long range) {
+        if (isNull(json, range)) {
+            return null;
+        }
+        int start = start(range);
+        int end = end(range);
+        if (json.charAt(start) != '"') {
+            return json.substring(start, end);
+        }
+        int escape = json.indexOf('\\', start + 1);
+        if (escape < 0 || escape >= end - 1) {
+            return json.substring(start + 1, end - 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = json.charAt(++i);
+            switch (c) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    sb.append((char)Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 读取整数值,数字以字符串形式给出时同样解析
+     *
+     * @param json
+     * @param range
+     * @param defaultValue 字段不存在或为null时的返回值
+     * @return
+     */
+    public static long readLong(String json, long range, long defaultValue) {
+        if (isNull(json, range)) {
+            return defaultValue;
+        }
+        int start = start(range);
+        int end = end(range);
+        if (json.charAt(start) == '"') {
+            start++;
+            end--;
+        }
+        boolean negative = false;
+        if (start < end && json.charAt(start) == '-') {
+            negative = true;
+            start++;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c < '0' || c > '9') {
+                return (long)readDouble(json, range, defaultValue);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 读取浮点数值,数字以字符串形式给出时同样解析
+     *
+     * @param json
+     * @param range
+     * @param defaultValue 字段不存在或为null时的返回值
+     * @return
+     */
+    public static double readDouble(String json, long range, double defaultValue) {
+        if (isNull(json, range)) {
+            return defaultValue;
+        }
+        int start = start(range);
+        int end = end(range);
+        if (json.charAt(start) == '"') {
+            start++;
+            end--;
+        }
+        return Double.parseDouble(json.substring(start, end));
+    }
+
+    public static boolean readBoolean(String json, long range, boolean defaultValue) {
+        if (isNull(json, range)) {
+            return defaultValue;
+        }
+        return json.startsWith("true", start(range));
+    }
+
+    /**
+     * 读取字符串,数字,布尔或null值,类型与fastjson解析到Map中的一致:整数为Integer或Long,小数为BigDecimal
+     *
+     * @param json
+     * @param range
+     * @return
+     * @throws IllegalArgumentException 值为对象或数组
+     */
+    public static Object readScalar(String json, long range) {
+        if (isNull(json, range)) {
+            return null;
+        }
+        char c = type(json, range);
+        switch (c) {
+            case '"':
+                return readString(json, range);
+            case 't':
+                return Boolean.TRUE;
+            case 'f':
+                return Boolean.FALSE;
+            case '{':
+            case '[':
+                throw new IllegalArgumentException("not a scalar value at " + start(range));
+            default:
+                String number = json.substring(start(range), end(range));
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    return new BigDecimal(number);
+                }
+                if (number.length() < 10) {
+                    return Integer.parseInt(number);
+                }
+                BigInteger big = new BigInteger(number);
+                if (big.bitLength() < 32) {
+                    return big.intValue();
+                }
+                if (big.bitLength() < 64) {
+                    return big.longValue();
+                }
+                return big;
+        }
+    }
+
+    private static int skipValue(String json, int i, int end) {
+        if (i >= end) {
+            throw malformed(json, i);
+        }
+        char c = json.charAt(i);
+        if (c == '"') {
+            return skipString(json, i, end);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (i < end) {
+                c = json.charAt(i);
+                if (c == '"') {
+                    i = skipString(json, i, end);
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            throw malformed(json, i);
+        }
+        while (i < end) {
+            c = json.charAt(i);
+            if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipString(String json, int i, int end) {
+        for (int j = i + 1; j < end; j++) {
+            char c = json.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '"') {
+                return j + 1;
+            }
+        }
+        throw malformed(json, i);
+    }
+
+    private static int skipWhitespace(String json, int i, int end) {
+        while (i < end && isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static IllegalArgumentException malformed(String json, int i) {
+        return new IllegalArgumentException("malformed json at " + i + ":" + json);
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.alibaba.nls.client.util.OpuCodec.OPU_BUF_SIZE;
+import static com.alibaba.nls.client.util.OpuCodec.RAW_BUF_SIZE;
+
+/**
+ * 批量pcm转opu:在fork/join线程池中并行编码多个文件,每个文件以内存映射读取,用一个新建的编码器顺序编码,
+ * 输出与{@link OpuCodec#encode(int, java.io.InputStream, OutputStream)}相同.
+ * 文件数少于并行度时可通过{@link #setChunkFrames(int)}开启大文件切块并行编码
+ */
+public class OpuBulkEncoder {
+    static Logger logger = LoggerFactory.getLogger(OpuBulkEncoder.class);
+
+    /**
+     * 批量编码的统计
+     */
+    public static class Result {
+        private final int files;
+        private final long pcmBytes;
+        private final long opuBytes;
+        private final int bytesPerSecond;
+        private final long wallNanos;
+
+        Result(int files, long pcmBytes, long opuBytes, int bytesPerSecond, long wallNanos) {
+            this.files = files;
+            this.pcmBytes = pcmBytes;
+            this.opuBytes = opuBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.wallNanos = wallNanos;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getPcmBytes() {
+            return pcmBytes;
+        }
+
+        public long getOpuBytes() {
+            return opuBytes;
+        }
+
+        /**
+         * 编码的音频时长,单位秒
+         *
+         * @return
+         */
+        public double getAudioSeconds() {
+            return (double)pcmBytes / bytesPerSecond;
+        }
+
+        public double getWallSeconds() {
+            return wallNanos / 1e9;
+        }
+
+        /**
+         * 每秒实际耗时编码的音频秒数
+         *
+         * @return
+         */
+        public double getSpeedRatio() {
+            return wallNanos <= 0 ? 0 : getAudioSeconds() / getWallSeconds();
+        }
+
+        /**
+         * 每秒编码的pcm字节数,单位MB
+         *
+         * @return
+         */
+        public double getMegabytesPerSecond() {
+            return wallNanos <= 0 ? 0 : pcmBytes / 1048576.0 / getWallSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("files:%d,pcm:%dB,opu:%dB,audio:%.2fs,wall:%.2fs,speed:%.2fx,%.2fMB/s", files,
+                pcmBytes, opuBytes, getAudioSeconds(), getWallSeconds(), getSpeedRatio(), getMegabytesPerSecond());
+        }
+    }
+
+    /**
+     * 顺序编码时每次映射的字节数
+     */
+    private static final int MAP_BYTES = RAW_BUF_SIZE * 1500;
+
+    private final ForkJoinPool pool;
+    private int chunkFrames;
+
+    /**
+     * 并行度为cpu核数
+     */
+    public OpuBulkEncoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 同时编码的线程数
+     */
+    public OpuBulkEncoder(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * 开启大文件切块并行编码,默认关闭.超过chunkFrames帧的文件按帧对齐切块,每块用新建的编码器编码,
+     * 按块顺序写入输出.每块从初始的编码状态开始,输出与顺序编码不逐字节相同,但帧数及帧顺序一致
+     *
+     * @param chunkFrames 每块的帧数,每帧{@link OpuCodec#RAW_BUF_SIZE}字节,如1500即16k音频30秒一块,小于等于0时关闭
+     */
+    public void setChunkFrames(int chunkFrames) {
+        this.chunkFrames = Math.max(chunkFrames, 0);
+    }
+
+    /**
+     * 编码一个pcm文件
+     *
+     * @param sampleRate 8000 16000
+     * @param input      16bit单声道pcm
+     * @param output     opu文件,已存在时覆盖
+     * @return
+     * @throws Exception
+     */
+    public Result encode(int sampleRate, File input, File output) throws Exception {
+        List<File> inputs = new ArrayList<File>();
+        inputs.add(input);
+        List<File> outputs = new ArrayList<File>();
+        outputs.add(output);
+        return encode(sampleRate, inputs, outputs);
+    }
+
+    /**
+     * 编码多个pcm文件到outputDir,输出文件名为输入文件名去掉扩展名后加.opu
+     *
+     * @param sampleRate 8000 16000
+     * @param inputs     16bit单声道pcm
+     * @param outputDir
+     * @return
+     * @throws Exception
+     */
+    public Result encode(int sampleRate, List<File> inputs, File outputDir) throws Exception {
+        List<File> outputs = new ArrayList<File>();
+        for (File input : inputs) {
+            String name = input.getName();
+            int dot = name.lastIndexOf('.');
+            outputs.add(new File(outputDir, (dot > 0 ? name.substring(0, dot) : name) + ".opu"));
+        }
+        return encode(sampleRate, inputs, outputs);
+    }
+
+    private Result encode(int sampleRate, List<File> inputs, List<File> outputs) throws Exception {
+        long start = System.nanoTime();
+        List<FileTask> tasks = new ArrayList<FileTask>();
+        for (int i = 0; i < inputs.size(); i++) {
+            FileTask task = new FileTask(sampleRate, inputs.get(i), outputs.get(i));
+            pool.execute(task);
+            tasks.add(task);
+        }
+        long pcmBytes = 0;
+        long opuBytes = 0;
+        Exception failure = null;
+        for (FileTask task : tasks) {
+            try {
+                long[] sizes = task.get();
+                pcmBytes += sizes[0];
+                opuBytes += sizes[1];
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    while (cause instanceof EncodeException && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    failure = cause instanceof Exception ? (Exception)cause : e;
+                    //快速失败,未开始的文件不再编码
+                    for (FileTask other : tasks) {
+                        other.cancel(false);
+                    }
+                }
+            } catch (CancellationException e) {
+                //其他文件失败后取消
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        Result result = new Result(inputs.size(), pcmBytes, opuBytes, sampleRate * 2, System.nanoTime() - start);
+        logger.info("opu bulk encode finished,{}", result);
+        return result;
+    }
+
+    /**
+     * 释放线程池
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 以内存映射读取position开始的length字节pcm,用encoder编码后写入outs
+     *
+     * @param last 为true时补零编码剩余不足一帧的数据
+     * @param out  编码缓冲区
+     * @return 写入的opu字节数
+     */
+    private static long encodeRange(OpuEncoder encoder, FileChannel channel, long position, int length,
+                                    boolean last, ByteBuffer out, OutputStream outs) throws IOException {
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        long written = 0;
+        while (in.hasRemaining()) {
+            encoder.encode(in, out);
+            outs.write(out.array(), 0, out.position());
+            written += out.position();
+            out.clear();
+        }
+        if (last) {
+            encoder.flush(out);
+            outs.write(out.array(), 0, out.position());
+            written += out.position();
+            out.clear();
+        }
+        return written;
+    }
+
+    /**
+     * 包装编码中的受检异常,在fork/join任务间传递
+     */
+    private static class EncodeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        EncodeException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 编码一个文件:默认顺序编码;开启切块且文件超过一块时按帧对齐切块并行编码,
+     * 同时最多2倍并行度的块在处理中,按块顺序写入输出
+     *
+     * @return pcm及opu的字节数
+     */
+    private class FileTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int sampleRate;
+        private final File input;
+        private final File output;
+
+        FileTask(int sampleRate, File input, File output) {
+            this.sampleRate = sampleRate;
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        protected long[] compute() {
+            try {
+                return encodeFile();
+            } catch (IOException e) {
+                output.delete();
+                throw new EncodeException(e);
+            } catch (RuntimeException e) {
+                output.delete();
+                throw e;
+            }
+        }
+
+        private long[] encodeFile() throws IOException {
+            RandomAccessFile file = new RandomAccessFile(input, "r");
+            OutputStream outs = new FileOutputStream(output);
+            try {
+                FileChannel channel = file.getChannel();
+                long size = channel.size();
+                long chunkBytes = (long)chunkFrames * RAW_BUF_SIZE;
+                long opuBytes = chunkBytes > 0 && size > chunkBytes ? encodeChunks(channel, size, chunkBytes, outs)
+                    : encodeSequential(channel, size, outs);
+                return new long[] {size, opuBytes};
+            } finally {
+                outs.close();
+                file.close();
+            }
+        }
+
+        private long encodeSequential(FileChannel channel, long size, OutputStream outs) throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(OPU_BUF_SIZE * 64);
+            OpuEncoder encoder = new OpuEncoder(sampleRate);
+            try {
+                long opuBytes = 0;
+                for (long position = 0; position < size; position += MAP_BYTES) {
+                    int length = (int)Math.min(MAP_BYTES, size - position);
+                    opuBytes += encodeRange(encoder, channel, position, length, position + length == size, out, outs);
+                }
+                return opuBytes;
+            } finally {
+                encoder.close();
+            }
+        }
+
+        private long encodeChunks(FileChannel channel, long size, long chunkBytes, OutputStream outs)
+            throws IOException {
+            Deque<ChunkTask> pending = new ArrayDeque<ChunkTask>();
+            try {
+                int window = pool.getParallelism() * 2;
+                long opuBytes = 0;
+                long position = 0;
+                while (position < size || !pending.isEmpty()) {
+                    while (position < size && pending.size() < window) {
+                        int length = (int)Math.min(chunkBytes, size - position);
+                        ChunkTask chunk = new ChunkTask(sampleRate, channel, position, length,
+                            position + length == size);
+                        chunk.fork();
+                        pending.addLast(chunk);
+                        position += length;
+                    }
+                    byte[] encoded = pending.removeFirst().join();
+                    outs.write(encoded);
+                    opuBytes += encoded.length;
+                }
+                return opuBytes;
+            } finally {
+                for (ChunkTask chunk : pending) {
+                    chunk.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 用新建的编码器编码一块pcm,只有最后一块会有不足一帧的数据
+     */
+    private static class ChunkTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int sampleRate;
+        private final FileChannel channel;
+        private final long position;
+        private final int length;
+        private final boolean last;
+
+        ChunkTask(int sampleRate, FileChannel channel, long position, int length, boolean last) {
+            this.sampleRate = sampleRate;
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.last = last;
+        }
+
+        @Override
+        protected byte[] compute() {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 8 + OPU_BUF_SIZE);
+            OpuEncoder encoder = new OpuEncoder(sampleRate);
+            try {
+                encodeRange(encoder, channel, position, length, last, ByteBuffer.allocate(OPU_BUF_SIZE * 64),
+                    encoded);
+            } catch (IOException e) {
+                throw new EncodeException(e);
+            } finally {
+                encoder.close();
+            }
+            return encoded.toByteArray();
+        }
+    }
+}
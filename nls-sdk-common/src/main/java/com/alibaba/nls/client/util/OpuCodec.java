@@ -16,6 +16,7 @@
 
 package com.alibaba.nls.client.util;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
@@ -54,60 +55,74 @@ public class OpuCodec {
 
     public native void destroyOpuEncoder(long handle);
 
-    public void encode(int sampleRate, InputStream ins, OutputStream outs) throws Exception {
-        long encoder = createOpuEncoder(sampleRate);
+    /**
+     * 编码整个pcm流,结束后关闭ins及outs.每次调用使用新建的编码器,相同的输入得到相同的输出
+     *
+     * @param sampleRate
+     * @param ins
+     * @param outs
+     * @throws Exception
+     */
+    public void encode(int sampleRate, InputStream ins, final OutputStream outs) throws Exception {
+        OpuEncoder encoder = new OpuEncoder(sampleRate);
         try {
-            byte[] buffer = new byte[RAW_BUF_SIZE];
-            byte[] bytes = new byte[512];
-            while (ins.available() >= RAW_BUF_SIZE) {
-                ins.read(buffer, 0, RAW_BUF_SIZE);
-                //exg: the pcm data must be 640 byte
-                int encodeSize = encode(encoder, buffer, RAW_BUF_SIZE, bytes, OPU_BUF_SIZE);
-                outs.write(bytes, 0, encodeSize);
-            }
-            int remainSize = ins.read(buffer, 0, RAW_BUF_SIZE);
-            //填充
-            if (remainSize > 0) {
-                Arrays.fill(buffer, remainSize - 1, RAW_BUF_SIZE, (byte)0);
-                int encodeSize = encode(encoder, buffer, RAW_BUF_SIZE, bytes, OPU_BUF_SIZE);
-                outs.write(bytes, 0, encodeSize);
+            OpuEncoder.Output output = new OpuEncoder.Output() {
+                @Override
+                public void write(byte[] data, int offset, int length) {
+                    try {
+                        outs.write(data, offset, length);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            byte[] buffer = new byte[RAW_BUF_SIZE * 16];
+            int len;
+            while ((len = ins.read(buffer)) > 0) {
+                encoder.encode(buffer, 0, len, output);
             }
+            //不足一帧的数据补零
+            encoder.flush(output);
             ins.close();
             outs.close();
         } catch (Exception e) {
             logger.error("encode error", e);
             throw e;
-
         } finally {
-            destroyOpuEncoder(encoder);
+            encoder.close();
         }
-
     }
 
-    public void encode(int sampleRate, InputStream ins, EncodeListener listener) throws Exception {
-        long encoder = createOpuEncoder(sampleRate);
+    /**
+     * 编码整个pcm流,每帧的编码结果回调一次,结束后关闭ins.每次调用使用新建的编码器
+     *
+     * @param sampleRate
+     * @param ins
+     * @param listener
+     * @throws Exception
+     */
+    public void encode(int sampleRate, InputStream ins, final EncodeListener listener) throws Exception {
+        OpuEncoder encoder = new OpuEncoder(sampleRate);
         try {
+            OpuEncoder.Output output = new OpuEncoder.Output() {
+                @Override
+                public void write(byte[] data, int offset, int length) {
+                    listener.onEncodedData(Arrays.copyOfRange(data, offset, offset + length));
+                }
+            };
+            //每次最多一帧,保证每帧回调一次
             byte[] buffer = new byte[RAW_BUF_SIZE];
-            byte[] bytes = new byte[512];
-            while (ins.available() >= RAW_BUF_SIZE) {
-                ins.read(buffer, 0, RAW_BUF_SIZE);
-                //exg: the pcm data must be 640 byte
-                int encodeSize = encode(encoder, buffer, RAW_BUF_SIZE, bytes, OPU_BUF_SIZE);
-                listener.onEncodedData(Arrays.copyOfRange(bytes, 0, encodeSize));
-            }
-            int remainSize = ins.read(buffer, 0, RAW_BUF_SIZE);
-            //填充
-            if (remainSize > 0) {
-                Arrays.fill(buffer, remainSize - 1, RAW_BUF_SIZE, (byte)0);
-                int encodeSize = encode(encoder, buffer, RAW_BUF_SIZE, bytes, OPU_BUF_SIZE);
-                listener.onEncodedData(Arrays.copyOfRange(bytes, 0, encodeSize));
+            int len;
+            while ((len = ins.read(buffer)) > 0) {
+                encoder.encode(buffer, 0, len, output);
             }
+            encoder.flush(output);
             ins.close();
         } catch (Exception e) {
             logger.error("encode error", e);
             throw e;
         } finally {
-            destroyOpuEncoder(encoder);
+            encoder.close();
         }
     }
 }
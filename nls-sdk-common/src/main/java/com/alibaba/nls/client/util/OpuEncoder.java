@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.alibaba.nls.client.util.OpuCodec.OPU_BUF_SIZE;
+import static com.alibaba.nls.client.util.OpuCodec.RAW_BUF_SIZE;
+
+/**
+ * 流式opu编码器,持有一个native编码器,可以连续编码任意长度的pcm:
+ * 按{@link OpuCodec#RAW_BUF_SIZE}字节一帧编码,不足一帧的数据留到下次或{@link #flush(Output)}时补零编码.
+ * 编码过程不分配内存.所有方法加锁,{@link #close()}可以在其他线程调用,之后的调用抛出IllegalStateException.
+ * 由{@link OpuEncoderPool}获取的编码器close时将native编码器归还到池中,否则释放native编码器
+ */
+public class OpuEncoder implements AutoCloseable {
+    private static final OpuCodec CODEC = new OpuCodec();
+
+    /**
+     * 编码后的数据输出,一次调用中编码的所有帧合并输出
+     */
+    public interface Output {
+        void write(byte[] data, int offset, int length);
+    }
+
+    private final int sampleRate;
+    private long handle;
+    private final byte[] frame = new byte[RAW_BUF_SIZE];
+    private int frameLength;
+    private final byte[] scratch = new byte[OPU_BUF_SIZE];
+    private byte[] out = new byte[OPU_BUF_SIZE * 8];
+    private int outLength;
+    /**
+     * native编码器所属的池,为null表示close时释放
+     */
+    private OpuEncoderPool pool;
+
+    /**
+     * @param sampleRate 8000 16000
+     */
+    public OpuEncoder(int sampleRate) {
+        this(sampleRate, createHandle(sampleRate), null);
+    }
+
+    /**
+     * 使用已创建的native编码器,由池获取时调用
+     */
+    OpuEncoder(int sampleRate, long handle, OpuEncoderPool pool) {
+        this.sampleRate = sampleRate;
+        this.handle = handle;
+        this.pool = pool;
+    }
+
+    static long createHandle(int sampleRate) {
+        long handle;
+        try {
+            handle = CODEC.createOpuEncoder(sampleRate);
+        } catch (UnsatisfiedLinkError e) {
+            throw new RuntimeException("opu encoder is unavailable on " + NativeLibUtil.getArchitecture(), e);
+        }
+        if (handle == 0) {
+            throw new RuntimeException("fail to create opu encoder,sample rate:" + sampleRate);
+        }
+        return handle;
+    }
+
+    static void destroyHandle(long handle) {
+        CODEC.destroyOpuEncoder(handle);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 编码一段pcm,编码结果写入output,不足一帧时不输出
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param output
+     */
+    public synchronized void encode(byte[] data, int offset, int length, Output output) {
+        checkOpen();
+        outLength = 0;
+        int end = offset + length;
+        if (frameLength > 0) {
+            int n = Math.min(RAW_BUF_SIZE - frameLength, length);
+            System.arraycopy(data, offset, frame, frameLength, n);
+            frameLength += n;
+            offset += n;
+            if (frameLength < RAW_BUF_SIZE) {
+                return;
+            }
+            encodeFrame(frame, 0);
+            frameLength = 0;
+        }
+        while (end - offset >= RAW_BUF_SIZE) {
+            encodeFrame(data, offset);
+            offset += RAW_BUF_SIZE;
+        }
+        if (offset < end) {
+            System.arraycopy(data, offset, frame, 0, end - offset);
+            frameLength = end - offset;
+        }
+        if (outLength > 0) {
+            output.write(out, 0, outLength);
+        }
+    }
+
+    /**
+     * 音频结束:剩余不足一帧的数据补零后编码输出,之后可以编码新的音频
+     *
+     * @param output
+     */
+    public synchronized void flush(Output output) {
+        checkOpen();
+        outLength = 0;
+        if (frameLength > 0) {
+            Arrays.fill(frame, frameLength, RAW_BUF_SIZE, (byte)0);
+            encodeFrame(frame, 0);
+            frameLength = 0;
+        }
+        if (outLength > 0) {
+            output.write(out, 0, outLength);
+        }
+    }
+
+    /**
+     * 编码in中position到limit之间的pcm,编码结果从out的position开始写入,两者的position随之前进.
+     * out剩余空间不足{@link OpuCodec#OPU_BUF_SIZE}时停止,in中未处理的数据保留,
+     * 否则in中的数据全部处理,不足一帧的部分留到下次
+     *
+     * @param in  pcm,可以是direct buffer
+     * @param out 编码结果,可以是direct buffer
+     * @return 写入out的字节数
+     */
+    public synchronized int encode(ByteBuffer in, ByteBuffer out) {
+        checkOpen();
+        int start = out.position();
+        while (in.hasRemaining() && out.remaining() >= OPU_BUF_SIZE) {
+            int n = Math.min(RAW_BUF_SIZE - frameLength, in.remaining());
+            in.get(frame, frameLength, n);
+            frameLength += n;
+            if (frameLength == RAW_BUF_SIZE) {
+                out.put(scratch, 0, encodeNative(frame));
+                frameLength = 0;
+            }
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * 音频结束:剩余不足一帧的数据补零后编码,写入out
+     *
+     * @param out 剩余空间不小于{@link OpuCodec#OPU_BUF_SIZE}
+     * @return 写入out的字节数
+     */
+    public synchronized int flush(ByteBuffer out) {
+        checkOpen();
+        if (frameLength == 0) {
+            return 0;
+        }
+        if (out.remaining() < OPU_BUF_SIZE) {
+            throw new IllegalArgumentException("output buffer is too small,remaining:" + out.remaining());
+        }
+        Arrays.fill(frame, frameLength, RAW_BUF_SIZE, (byte)0);
+        int size = encodeNative(frame);
+        out.put(scratch, 0, size);
+        frameLength = 0;
+        return size;
+    }
+
+    /**
+     * 丢弃剩余不足一帧的数据.native编码器的内部状态无法重置,编码新的音频时输出与新建的编码器不完全相同
+     */
+    public synchronized void reset() {
+        frameLength = 0;
+    }
+
+    /**
+     * 由池获取时将native编码器归还到池中,池已满或不是由池获取时释放native编码器.
+     * 可以重复调用,之后本对象不能再使用,即使native编码器已被其他使用者获取
+     */
+    @Override
+    public void close() {
+        long released;
+        OpuEncoderPool owner;
+        synchronized (this) {
+            if (handle == 0) {
+                return;
+            }
+            released = handle;
+            owner = pool;
+            handle = 0;
+            pool = null;
+            frameLength = 0;
+        }
+        if (owner == null || !owner.release(sampleRate, released)) {
+            destroyHandle(released);
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return handle == 0;
+    }
+
+    private void checkOpen() {
+        if (handle == 0) {
+            throw new IllegalStateException("opu encoder is closed");
+        }
+    }
+
+    private void encodeFrame(byte[] data, int offset) {
+        if (outLength + OPU_BUF_SIZE > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, outLength + OPU_BUF_SIZE));
+        }
+        byte[] input = data;
+        if (offset != 0) {
+            //native接口只能从数组开头编码
+            System.arraycopy(data, offset, frame, 0, RAW_BUF_SIZE);
+            input = frame;
+        }
+        int size = encodeNative(input);
+        System.arraycopy(scratch, 0, out, outLength, size);
+        outLength += size;
+    }
+
+    /**
+     * 编码一帧到scratch
+     */
+    private int encodeNative(byte[] input) {
+        int size = CODEC.encode(handle, input, RAW_BUF_SIZE, scratch, OPU_BUF_SIZE);
+        if (size < 0) {
+            throw new RuntimeException("opu encode error:" + size);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * opu编码器池,按采样率缓存空闲的native编码器,避免频繁创建及销毁.
+ * 每次获取都返回新的{@link OpuEncoder},close时只归还其中的native编码器,之后该对象不能再使用.
+ * 每个采样率最多缓存maxIdle个,超出的直接释放.
+ * native编码器的内部状态无法重置,会延续到下一个使用者,编码结果与新建的编码器不完全相同,需要确定的输出时直接创建{@link OpuEncoder}
+ */
+public class OpuEncoderPool {
+    private static volatile OpuEncoderPool defaultPool;
+
+    private final int maxIdle;
+    private final Map<Integer, Deque<Long>> idle = new HashMap<Integer, Deque<Long>>();
+    private boolean closed;
+
+    /**
+     * @param maxIdle 每个采样率缓存的空闲编码器数量上限
+     */
+    public OpuEncoderPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 共用的池,每个采样率最多缓存的数量由系统属性nls.opu.pool.maxIdle指定,默认16
+     *
+     * @return
+     */
+    public static OpuEncoderPool getDefault() {
+        OpuEncoderPool pool = defaultPool;
+        if (pool == null) {
+            synchronized (OpuEncoderPool.class) {
+                pool = defaultPool;
+                if (pool == null) {
+                    pool = new OpuEncoderPool(Integer.getInteger("nls.opu.pool.maxIdle", 16));
+                    defaultPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 获取编码器,没有空闲的native编码器时创建.用完后调用{@link OpuEncoder#close()}归还
+     *
+     * @param sampleRate 8000 16000
+     * @return
+     */
+    public OpuEncoder acquire(int sampleRate) {
+        Long handle = null;
+        synchronized (this) {
+            Deque<Long> handles = idle.get(sampleRate);
+            if (handles != null) {
+                handle = handles.pollFirst();
+            }
+        }
+        return new OpuEncoder(sampleRate, handle != null ? handle : OpuEncoder.createHandle(sampleRate), this);
+    }
+
+    /**
+     * 归还native编码器,由{@link OpuEncoder#close()}调用,每个handle只归还一次
+     *
+     * @return 已缓存时返回true,否则由调用方释放
+     */
+    synchronized boolean release(int sampleRate, long handle) {
+        if (closed) {
+            return false;
+        }
+        Deque<Long> handles = idle.get(sampleRate);
+        if (handles == null) {
+            handles = new ArrayDeque<Long>();
+            idle.put(sampleRate, handles);
+        }
+        if (handles.size() >= maxIdle) {
+            return false;
+        }
+        handles.offerFirst(handle);
+        return true;
+    }
+
+    /**
+     * 空闲编码器数量
+     *
+     * @return
+     */
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (Deque<Long> handles : idle.values()) {
+            count += handles.size();
+        }
+        return count;
+    }
+
+    /**
+     * 释放所有空闲编码器,之后归还的编码器直接释放
+     */
+    public void shutdown() {
+        Deque<Long> released = new ArrayDeque<Long>();
+        synchronized (this) {
+            closed = true;
+            for (Deque<Long> handles : idle.values()) {
+                released.addAll(handles);
+            }
+            idle.clear();
+        }
+        for (Long handle : released) {
+            OpuEncoder.destroyHandle(handle);
+        }
+    }
+}
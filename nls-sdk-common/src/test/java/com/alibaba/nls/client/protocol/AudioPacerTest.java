@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.io.ByteArrayInputStream;
+
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioPacerTest {
+    private static final AudioPacer.Sink SINK = new AudioPacer.Sink() {
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public boolean write(byte[] data, int offset, int length) {
+            return true;
+        }
+    };
+
+    @Test
+    public void testUnlimited() throws Exception {
+        AudioPacer pacer = new AudioPacer(1);
+        try {
+            Future<Long> future = pacer.submit(new ByteArrayInputStream(new byte[1000]), 64, 0, SINK);
+            assertEquals(Long.valueOf(1000), future.get());
+            assertEquals(0, pacer.getActiveStreams());
+        } finally {
+            pacer.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownFailsPendingStreams() throws Exception {
+        AudioPacer pacer = new AudioPacer(1);
+        //100字节每秒,发送完需要10秒
+        Future<Long> future = pacer.submit(new ByteArrayInputStream(new byte[1000]), 10, 100, SINK);
+        Thread.sleep(50);
+        pacer.shutdown();
+        assertTrue(future.await(1000));
+        assertFalse(future.isSuccess());
+        assertTrue(future.cause() instanceof IllegalStateException);
+        assertEquals(0, pacer.getActiveStreams());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterShutdown() {
+        AudioPacer pacer = new AudioPacer(1);
+        pacer.shutdown();
+        try {
+            pacer.submit(new ByteArrayInputStream(new byte[10]), 10, 0, SINK);
+        } finally {
+            assertEquals(0, pacer.getActiveStreams());
+        }
+    }
+}
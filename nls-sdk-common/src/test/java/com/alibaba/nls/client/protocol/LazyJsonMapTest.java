@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import com.alibaba.nls.client.util.JsonScanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LazyJsonMapTest {
+
+    @Test
+    public void testRepeatedAccessAndReset() {
+        String first = "{\"name\":\"a\",\"status\":20000000,\"time\":1.5}";
+        LazyJsonMap map = new LazyJsonMap(first, JsonScanner.whole(first));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("a", map.getString("name"));
+            assertEquals("a", map.get("name"));
+            assertEquals(20000000, map.getLong("status", 0));
+            assertEquals(1.5, map.getDouble("time", 0), 0);
+            assertNull(map.get("missing"));
+            assertFalse(map.containsKey("missing"));
+        }
+
+        //复用时不能读到上一条消息中的位置
+        String second = "{\"status\":1,\"name\":\"bb\"}";
+        map.reset(second, JsonScanner.whole(second));
+        assertEquals("bb", map.getString("name"));
+        assertEquals(1, map.getLong("status", 0));
+        assertFalse(map.containsKey("time"));
+        assertEquals(-1, map.getDouble("time", -1), 0);
+    }
+
+    @Test
+    public void testManyKeys() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 20; i++) {
+            sb.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":").append(i);
+        }
+        String json = sb.append('}').toString();
+        LazyJsonMap map = new LazyJsonMap(json, JsonScanner.whole(json));
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, map.getLong("k" + i, -1));
+                assertTrue(map.containsKey("k" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testModifiedAfterLookup() {
+        String json = "{\"name\":\"a\",\"payload\":{\"x\":1}}";
+        LazyJsonMap map = new LazyJsonMap(json, JsonScanner.whole(json));
+        assertEquals("a", map.getString("name"));
+        map.put("name", "b");
+        assertEquals("b", map.getString("name"));
+        assertEquals("b", map.get("name"));
+        assertEquals("{\"x\":1}", map.getRaw("payload"));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VoiceActivityDetectorTest {
+    private static final int FRAME_BYTES = 320;
+
+    @Test
+    public void testDroppedSpans() {
+        //保留100ms静音,补发50ms
+        VoiceActivityDetector vad = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 100, 50);
+        byte[] audio = concat(tone(200), silence(500), tone(200), silence(300), tone(100));
+        byte[] sent = run(vad, audio, audio.length);
+
+        List<VoiceActivityDetector.DroppedSpan> spans = vad.getDroppedSpans();
+        assertEquals(2, spans.size());
+        //静音从200ms开始,前100ms照常发送,最后50ms在语音开始时补发
+        assertEquals(300, spans.get(0).getBeginMillis());
+        assertEquals(300, spans.get(0).getSentMillis());
+        assertEquals(350, spans.get(0).getDurationMillis());
+        assertEquals(1000, spans.get(1).getBeginMillis());
+        assertEquals(650, spans.get(1).getSentMillis());
+        assertEquals(150, spans.get(1).getDurationMillis());
+        assertEquals(500, vad.getDroppedMillis());
+        assertEquals(1300, vad.getProcessedMillis());
+        assertEquals(audio.length - 50 * FRAME_BYTES, sent.length);
+
+        //已发送的音频:200ms语音,100ms保留的静音,50ms补发的静音,然后是语音
+        assertTrue(isSilent(sent, 20, 35));
+        assertTrue(!isSilent(sent, 35, 36));
+        assertTrue(isSilent(sent, 55, 70));
+        assertTrue(!isSilent(sent, 70, 71));
+    }
+
+    @Test
+    public void testToOriginalMillis() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 100, 50);
+        byte[] audio = concat(tone(200), silence(500), tone(200), silence(300), tone(100));
+        run(vad, audio, audio.length);
+
+        assertEquals(0, vad.toOriginalMillis(0));
+        assertEquals(299, vad.toOriginalMillis(299));
+        assertEquals(650, vad.toOriginalMillis(300));
+        assertEquals(850, vad.toOriginalMillis(500));
+        assertEquals(999, vad.toOriginalMillis(649));
+        assertEquals(1150, vad.toOriginalMillis(650));
+        assertEquals(1300, vad.toOriginalMillis(800));
+    }
+
+    @Test
+    public void testChunkedInput() {
+        byte[] audio = concat(tone(200), silence(500), tone(200), silence(300), tone(100));
+        VoiceActivityDetector whole = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 100, 50);
+        byte[] expected = run(whole, audio, audio.length);
+        //不按帧长对齐的分块,结果应相同
+        VoiceActivityDetector chunked = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 100, 50);
+        byte[] sent = run(chunked, audio, 333);
+        assertEquals(expected.length, sent.length);
+        assertEquals(whole.getDroppedSpans().toString(), chunked.getDroppedSpans().toString());
+    }
+
+    @Test
+    public void testTrailingSilence() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 100, 50);
+        byte[] sent = run(vad, concat(tone(100), silence(300)), 4000);
+        //结尾的静音没有后续语音,不补发,flush时整段记录
+        List<VoiceActivityDetector.DroppedSpan> spans = vad.getDroppedSpans();
+        assertEquals(1, spans.size());
+        assertEquals(200, spans.get(0).getBeginMillis());
+        assertEquals(200, spans.get(0).getDurationMillis());
+        assertEquals(20 * FRAME_BYTES, sent.length);
+
+        vad.reset();
+        assertEquals(0, vad.getDroppedSpans().size());
+        assertEquals(0, vad.getDroppedMillis());
+        assertEquals(0, vad.getProcessedMillis());
+    }
+
+    @Test
+    public void testKeepAllSilence() {
+        //保留的静音长于实际静音时不省略
+        VoiceActivityDetector vad = new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K, 1000, 200);
+        byte[] audio = concat(tone(200), silence(500), tone(200));
+        byte[] sent = run(vad, audio, audio.length);
+        assertEquals(0, vad.getDroppedSpans().size());
+        assertEquals(audio.length, sent.length);
+    }
+
+    @Test
+    public void testRejectMismatchedTask() {
+        SpeechReqProtocol request = new SpeechReqProtocol();
+        request.payload = new HashMap<String, Object>();
+        request.setVoiceActivityDetector(new VoiceActivityDetector(SampleRateEnum.SAMPLE_RATE_16K));
+        request.payload.put(Constant.PROP_ASR_FORMAT, "opus");
+        try {
+            request.beginTask();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("only supports pcm"));
+        }
+        request.payload.put(Constant.PROP_ASR_FORMAT, InputFormatEnum.PCM.getName());
+        request.payload.put(Constant.PROP_ASR_SAMPLE_RATE, SampleRateEnum.SAMPLE_RATE_8K.value);
+        try {
+            request.beginTask();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("doesn't match sample_rate"));
+        }
+    }
+
+    private static byte[] run(VoiceActivityDetector vad, byte[] audio, int chunk) {
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        VoiceActivityDetector.Output output = new VoiceActivityDetector.Output() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                sent.write(data, offset, length);
+            }
+        };
+        for (int off = 0; off < audio.length; off += chunk) {
+            vad.process(audio, off, Math.min(chunk, audio.length - off), output);
+        }
+        vad.flush(output);
+        return sent.toByteArray();
+    }
+
+    /**
+     * 16k采样率的440Hz正弦波
+     */
+    private static byte[] tone(int millis) {
+        byte[] data = new byte[millis * 32];
+        for (int i = 0; i < data.length / 2; i++) {
+            short sample = (short)(8000 * Math.sin(2 * Math.PI * 440 * i / 16000));
+            data[2 * i] = (byte)sample;
+            data[2 * i + 1] = (byte)(sample >> 8);
+        }
+        return data;
+    }
+
+    private static byte[] silence(int millis) {
+        return new byte[millis * 32];
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 第from到to帧是否全为0
+     */
+    private static boolean isSilent(byte[] data, int from, int to) {
+        for (int i = from * FRAME_BYTES; i < to * FRAME_BYTES; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.alibaba.fastjson.JSON;
+
+import org.junit.Test;
+
+import static com.alibaba.nls.client.util.JsonScanner.NOT_FOUND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonScannerTest {
+
+    @Test
+    public void testEscapes() {
+        String json = "{\"a\":\"line\\nbreak\\ttab\",\"b\":\"quote\\\"in\\\\slash\\/\",\"c\":\"\\u4f60\\u597dx\"}";
+        assertEquals("line\nbreak\ttab", JsonScanner.readString(json, JsonScanner.find(json, "a")));
+        assertEquals("quote\"in\\slash/", JsonScanner.readString(json, JsonScanner.find(json, "b")));
+        assertEquals("你好x", JsonScanner.readString(json, JsonScanner.find(json, "c")));
+        for (String key : new String[] {"a", "b", "c"}) {
+            assertEquals(JSON.parseObject(json).getString(key),
+                JsonScanner.readString(json, JsonScanner.find(json, key)));
+        }
+    }
+
+    @Test
+    public void testEscapedQuoteInKeyAndValue() {
+        String json = "{\"k\\\"x\":\"},{\",\"name\":\"v\"}";
+        assertEquals("v", JsonScanner.readString(json, JsonScanner.find(json, "name")));
+        assertEquals("},{", JsonScanner.readString(json, JsonScanner.find(json, "k\\\"x")));
+    }
+
+    @Test
+    public void testNestedObjects() {
+        String json = " { \"header\" : {\"name\":\"inner\",\"status\":1} , \"list\":[{\"name\":\"x\"},[1,2]],"
+            + " \"name\" : \"outer\" } ";
+        assertEquals("outer", JsonScanner.readString(json, JsonScanner.find(json, "name")));
+        long header = JsonScanner.find(json, "header");
+        assertEquals('{', JsonScanner.type(json, header));
+        assertEquals("inner", JsonScanner.readString(json, JsonScanner.find(json, header, "name")));
+        assertEquals(1, JsonScanner.readLong(json, JsonScanner.find(json, header, "status"), -1));
+        long list = JsonScanner.find(json, "list");
+        assertEquals('[', JsonScanner.type(json, list));
+        assertEquals("[{\"name\":\"x\"},[1,2]]", json.substring(JsonScanner.start(list), JsonScanner.end(list)));
+        //只扫描直接字段
+        assertEquals(NOT_FOUND, JsonScanner.find(json, "status"));
+        //不是对象
+        assertEquals(NOT_FOUND, JsonScanner.find(json, list, "name"));
+    }
+
+    @Test
+    public void testMissingKeys() {
+        String json = "{\"a\":1,\"b\":null}";
+        assertEquals(NOT_FOUND, JsonScanner.find(json, "c"));
+        assertEquals(NOT_FOUND, JsonScanner.find("{}", "a"));
+        assertEquals(NOT_FOUND, JsonScanner.find(" { } ", "a"));
+        assertEquals(NOT_FOUND, JsonScanner.find(json, NOT_FOUND, "a"));
+        assertNull(JsonScanner.readString(json, JsonScanner.find(json, "c")));
+        assertEquals(7, JsonScanner.readLong(json, JsonScanner.find(json, "c"), 7));
+        assertEquals(0.5, JsonScanner.readDouble(json, JsonScanner.find(json, "c"), 0.5), 0);
+        assertTrue(JsonScanner.readBoolean(json, JsonScanner.find(json, "c"), true));
+        assertNull(JsonScanner.readScalar(json, JsonScanner.find(json, "c")));
+        long b = JsonScanner.find(json, "b");
+        assertTrue(b != NOT_FOUND);
+        assertTrue(JsonScanner.isNull(json, b));
+        assertNull(JsonScanner.readString(json, b));
+        assertEquals(3, JsonScanner.readLong(json, b, 3));
+    }
+
+    @Test
+    public void testNumbers() {
+        String json = "{\"i\":-42,\"l\":12345678901,\"d\":-1.5e3,\"s\":\"100\",\"big\":123456789012345678901234,"
+            + "\"f\":3.25,\"t\":true,\"n\":0}";
+        assertEquals(-42, JsonScanner.readLong(json, JsonScanner.find(json, "i"), 0));
+        assertEquals(12345678901L, JsonScanner.readLong(json, JsonScanner.find(json, "l"), 0));
+        assertEquals(-1500, JsonScanner.readLong(json, JsonScanner.find(json, "d"), 0));
+        assertEquals(-1500.0, JsonScanner.readDouble(json, JsonScanner.find(json, "d"), 0), 0);
+        assertEquals(100, JsonScanner.readLong(json, JsonScanner.find(json, "s"), 0));
+        assertEquals(3.25, JsonScanner.readDouble(json, JsonScanner.find(json, "f"), 0), 0);
+        assertTrue(JsonScanner.readBoolean(json, JsonScanner.find(json, "t"), false));
+        assertFalse(JsonScanner.readBoolean(json, JsonScanner.find(json, "n"), false));
+
+        assertEquals(Integer.valueOf(-42), JsonScanner.readScalar(json, JsonScanner.find(json, "i")));
+        assertEquals(Long.valueOf(12345678901L), JsonScanner.readScalar(json, JsonScanner.find(json, "l")));
+        assertEquals(new BigDecimal("-1.5e3"), JsonScanner.readScalar(json, JsonScanner.find(json, "d")));
+        assertEquals(new BigInteger("123456789012345678901234"),
+            JsonScanner.readScalar(json, JsonScanner.find(json, "big")));
+        assertEquals("100", JsonScanner.readScalar(json, JsonScanner.find(json, "s")));
+        //类型与fastjson解析结果一致
+        for (String key : JSON.parseObject(json).keySet()) {
+            Object expected = JSON.parseObject(json).get(key);
+            Object actual = JsonScanner.readScalar(json, JsonScanner.find(json, key));
+            assertEquals(key, expected.getClass(), actual.getClass());
+            assertEquals(key, expected, actual);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        JsonScanner.find("{\"a\" 1}", "b");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OpuBulkEncoderTest {
+
+    @Test
+    public void testSameOutputAsCodec() throws Exception {
+        File dir = createTempDir();
+        OpuBulkEncoder encoder = new OpuBulkEncoder(2);
+        try {
+            List<File> inputs = new ArrayList<File>();
+            List<byte[]> pcms = new ArrayList<byte[]>();
+            //第二个文件超过一次映射的长度
+            int[] sizes = {OpuCodec.RAW_BUF_SIZE * 10 + 7 * 2, OpuCodec.RAW_BUF_SIZE * 1600 + 100};
+            for (int i = 0; i < sizes.length; i++) {
+                byte[] pcm = pcm(sizes[i], i + 1);
+                pcms.add(pcm);
+                inputs.add(write(new File(dir, "f" + i + ".pcm"), pcm));
+            }
+            //多次编码的结果相同,与单线程流式编码相同
+            for (int round = 0; round < 2; round++) {
+                OpuBulkEncoder.Result result = encoder.encode(16000, inputs, dir);
+                assertEquals(inputs.size(), result.getFiles());
+                for (int i = 0; i < inputs.size(); i++) {
+                    assertArrayEquals(encode(pcms.get(i)), read(new File(dir, "f" + i + ".opu")));
+                }
+            }
+        } finally {
+            encoder.shutdown();
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static File createTempDir() throws Exception {
+        File dir = File.createTempFile("opu", "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    private static byte[] pcm(int length, int seed) {
+        byte[] pcm = new byte[length];
+        for (int i = 0; i < length; i += 2) {
+            short sample = (short)(3000 * Math.sin(i * seed / 20.0));
+            pcm[i] = (byte)sample;
+            pcm[i + 1] = (byte)(sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static File write(File file, byte[] data) throws Exception {
+        FileOutputStream outs = new FileOutputStream(file);
+        try {
+            outs.write(data);
+        } finally {
+            outs.close();
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int)raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] encode(byte[] pcm) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new OpuCodec().encode(16000, new ByteArrayInputStream(pcm), out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OpuEncoderPoolTest {
+    private static final OpuEncoder.Output DISCARD = new OpuEncoder.Output() {
+        @Override
+        public void write(byte[] data, int offset, int length) {
+        }
+    };
+
+    @Test
+    public void testClosedEncoderCannotBeUsed() {
+        OpuEncoderPool pool = new OpuEncoderPool(4);
+        try {
+            OpuEncoder first = pool.acquire(16000);
+            first.close();
+            assertTrue(first.isClosed());
+            assertEquals(1, pool.getIdleCount());
+
+            OpuEncoder second = pool.acquire(16000);
+            assertNotSame(first, second);
+            assertEquals(0, pool.getIdleCount());
+            //归还后的引用不能再编码,重复close不影响新的使用者
+            try {
+                first.encode(new byte[OpuCodec.RAW_BUF_SIZE], 0, OpuCodec.RAW_BUF_SIZE, DISCARD);
+                fail();
+            } catch (IllegalStateException e) {
+                //expected
+            }
+            first.close();
+            assertEquals(0, pool.getIdleCount());
+            second.encode(new byte[OpuCodec.RAW_BUF_SIZE], 0, OpuCodec.RAW_BUF_SIZE, DISCARD);
+            second.close();
+            second.close();
+            assertEquals(1, pool.getIdleCount());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testCodecOutputIsDeterministic() throws Exception {
+        byte[] pcm = new byte[OpuCodec.RAW_BUF_SIZE * 20 + 100];
+        for (int i = 0; i < pcm.length; i += 2) {
+            short sample = (short)(3000 * Math.sin(i / 10.0));
+            pcm[i] = (byte)sample;
+            pcm[i + 1] = (byte)(sample >> 8);
+        }
+        byte[] first = encode(pcm);
+        assertTrue(first.length > 0);
+        assertArrayEquals(first, encode(pcm));
+    }
+
+    private static byte[] encode(byte[] pcm) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new OpuCodec().encode(16000, new ByteArrayInputStream(pcm), out);
+        return out.toByteArray();
+    }
+}
@@ -1,12 +1,11 @@
 package com.alibaba.nls.client.protocol.dm;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.nls.client.protocol.Constant;
@@ -14,15 +13,18 @@ import com.alibaba.nls.client.protocol.InputFormatEnum;
 import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
 import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.transport.Connection;
 import com.alibaba.nls.client.util.IdGen;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CLOSED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_COMPLETE;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CONNECTED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_FAIL;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED;
 import static com.alibaba.nls.client.protocol.dm.UDSConstant.VALUE_NAMESPACE_DIALOG;
 import static com.alibaba.nls.client.protocol.dm.UDSConstant.VALUE_NAME_DIALOG_STOP_RECOGNITION;
@@ -37,11 +39,10 @@ import static com.alibaba.nls.client.protocol.dm.UDSConstant.VALUE_NAME_DIALOG_S
 public class DialogAssistant extends SpeechReqProtocol {
     static Logger logger = LoggerFactory.getLogger(DialogAssistant.class);
 
-    private CountDownLatch wwvCompleteLatch;
-    private CountDownLatch asrCompleteLatch;
-    private CountDownLatch udsCompleteLatch;
-    private CountDownLatch readyLatch;
-    protected long lastSendTime=-1;
+    /**
+     * 唤醒词校验结束或会话终止时完成
+     */
+    private volatile Promise<Void> wwvPromise = ImmediateEventExecutor.INSTANCE.newPromise();
 
     protected List<Map<String, Object>> parmas = new ArrayList<Map<String, Object>>();
 
@@ -127,7 +128,17 @@ public class DialogAssistant extends SpeechReqProtocol {
     }
 
     public DialogAssistant(NlsClient client, DialogAssistantListener listener) throws Exception{
-        this.conn = client.connect(listener);
+        this(client.connect(listener), listener);
+    }
+
+    /**
+     * 使用已建立的连接创建对话助手,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
+     */
+    public DialogAssistant(Connection conn, DialogAssistantListener listener) {
+        this.conn = conn;
         payload = new HashMap<String, Object>();
         header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_DIALOG);
         header.put(Constant.PROP_NAME, UDSConstant.VALUE_NAME_DIALOG_START);
@@ -136,7 +147,43 @@ public class DialogAssistant extends SpeechReqProtocol {
         payload.put(Constant.PROP_ASR_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
         payload.put(UDSConstant.PROP_TIANGONG_ENABLE_WAKE_WORD_VERIFICATION, false);
         listener.setDialogAssistant(this);
-        state = STATE_CONNECTED;
+        transitTo(STATE_CONNECTED);
+    }
+
+    /**
+     * 异步创建对话助手:建连不阻塞调用线程,连接建立后Future完成.回调在连接的io线程中执行,
+     * 可在回调中设置参数并调用{@link #startAsync()};不能调用start/stop等同步等待服务端应答的方法,
+     * 应答由同一线程读取,等待只会超时.
+     * 返回类型允许{@link DialogAssistantV2}以同样的方法创建v2对话助手
+     *
+     * @param client
+     * @param listener
+     * @return
+     */
+    public static Future<? extends DialogAssistant> createAsync(NlsClient client, DialogAssistantListener listener) {
+        return createAsync(client.connectAsync(listener), factory(listener));
+    }
+
+    /**
+     * 使用指定token异步创建对话助手
+     *
+     * @param client
+     * @param token
+     * @param listener
+     * @return
+     */
+    public static Future<? extends DialogAssistant> createAsync(NlsClient client, String token,
+        DialogAssistantListener listener) {
+        return createAsync(client.connectAsync(token, listener), factory(listener));
+    }
+
+    private static SessionFactory<DialogAssistant> factory(final DialogAssistantListener listener) {
+        return new SessionFactory<DialogAssistant>() {
+            @Override
+            public DialogAssistant create(Connection conn) {
+                return new DialogAssistant(conn, listener);
+            }
+        };
     }
 
     /**
@@ -145,18 +192,36 @@ public class DialogAssistant extends SpeechReqProtocol {
      * @param data
      */
     public void send(byte[] data) {
-        long sendInterval;
-        if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-            logger.warn("too large binary send interval: {} million second",sendInterval);
-        }
-        state.checkSend();
-        try {
-            conn.sendBinary(Arrays.copyOfRange(data, 0, data.length));
-            lastSendTime=System.currentTimeMillis();
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{}", currentTaskId, e);
-            throw new RuntimeException(e);
-        }
+        send(data, 0, data.length);
+    }
+
+    /**
+     * 发送data中从offset开始的length个字节,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public void send(byte[] data, int offset, int length) {
+        doSend(data, offset, length);
+    }
+
+    /**
+     * 发送data中position到limit之间的数据,不改变data的position,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     */
+    public void send(ByteBuffer data) {
+        doSend(data);
+    }
+
+    /**
+     * 发送data中的可读数据,不做拷贝.调用后data的所有权转移给sdk,写出后由sdk释放,调用方不能再修改或release
+     *
+     * @param data
+     */
+    public void send(ByteBuf data) {
+        doSend(data);
     }
 
     /**
@@ -165,72 +230,36 @@ public class DialogAssistant extends SpeechReqProtocol {
      * @param ins
      */
     public void send(InputStream ins) {
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[8000];
-            int len = 0;
-            long sendInterval;
-            if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                logger.warn("too large binary send interval: {} million seconds",sendInterval);
-            }
-            while ((len = ins.read(bytes)) > 0) {
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-            }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{}", currentTaskId, e);
-            throw new RuntimeException(e);
-
-        }
+        doSend(ins);
     }
 
     /**
-     * 离线文件发送.当声音来自离线文件时,推荐使用此方法
+     * 离线文件发送.当声音来自离线文件时,推荐使用此方法.
+     * 由{@link com.alibaba.nls.client.protocol.AudioPacer}按batchSize/sleepInterval换算的码率调度,调用线程只等待发送完毕
      *
      * @param ins
      * @param batchSize
      * @param sleepInterval
      */
     public void send(InputStream ins, int batchSize, int sleepInterval) {
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[batchSize];
-            int len = 0;
-            long sendInterval;
-            if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                logger.warn("too large binary send interval: {} million seconds",sendInterval);
-            }
-            while ((len = ins.read(bytes)) > 0) {
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-                Thread.sleep(sleepInterval);
-            }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{}", currentTaskId, e);
-            throw new RuntimeException(e);
-        }
+        sendPacedAndWait(ins, batchSize, sleepInterval);
     }
 
     /**
      * 内部调用方法
      */
     void markReady() {
-        state = STATE_REQUEST_CONFIRMED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
+        transitTo(STATE_REQUEST_CONFIRMED);
     }
 
     /**
      * 内部调用方法
      */
-    void markWwvComplete(boolean isWaked) {
+    void markWwvComplete(boolean isWaked, DialogAssistantResponse response) {
         if(!isWaked){
-            state = STATE_COMPLETE;
-        }
-        if (wwvCompleteLatch != null) {
-            wwvCompleteLatch.countDown();
+            completeTask(response);
         }
+        wwvPromise.trySuccess(null);
 
     }
 
@@ -238,20 +267,14 @@ public class DialogAssistant extends SpeechReqProtocol {
      * 内部调用方法
      */
     void markAsrComplete() {
-        if (asrCompleteLatch != null) {
-            asrCompleteLatch.countDown();
-        }
-
+        //识别结束后还要等待对话结果,不改变状态
     }
 
     /**
      * 内部调用方法
      */
-    void markUdsComplete() {
-        state = STATE_COMPLETE;
-        if (udsCompleteLatch != null) {
-            udsCompleteLatch.countDown();
-        }
+    void markUdsComplete(DialogAssistantResponse response) {
+        completeTask(response);
 
     }
 
@@ -259,38 +282,23 @@ public class DialogAssistant extends SpeechReqProtocol {
      * 内部调用方法
      */
     public void markFail() {
-        state = STATE_FAIL;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (wwvCompleteLatch != null) {
-            wwvCompleteLatch.countDown();
-        }
-        if (asrCompleteLatch != null) {
-            asrCompleteLatch.countDown();
-        }
-        if (udsCompleteLatch != null) {
-            udsCompleteLatch.countDown();
-        }
+        markFail(null);
+    }
+
+    /**
+     * 内部调用方法
+     */
+    void markFail(DialogAssistantResponse response) {
+        failTask(response);
+        wwvPromise.trySuccess(null);
     }
 
     /**
      * 内部调用方法
      */
     void markClosed() {
-        state = STATE_CLOSED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (wwvCompleteLatch != null) {
-            wwvCompleteLatch.countDown();
-        }
-        if (asrCompleteLatch != null) {
-            asrCompleteLatch.countDown();
-        }
-        if (udsCompleteLatch != null) {
-            udsCompleteLatch.countDown();
-        }
+        transitTo(STATE_CLOSED);
+        wwvPromise.trySuccess(null);
     }
 
     /**
@@ -300,12 +308,9 @@ public class DialogAssistant extends SpeechReqProtocol {
      */
     @Override
     public void start() throws Exception {
+        checkBlocking("start");
         super.start();
-        wwvCompleteLatch = new CountDownLatch(1);
-        readyLatch = new CountDownLatch(1);
-        asrCompleteLatch = new CountDownLatch(1);
-        udsCompleteLatch = new CountDownLatch(1);
-        boolean result = readyLatch.await(10, TimeUnit.SECONDS);
+        boolean result = getReadyFuture().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for start confirmation.task_id:%s",
                 currentTaskId);
@@ -315,15 +320,17 @@ public class DialogAssistant extends SpeechReqProtocol {
 
     }
 
+    @Override
+    protected void doStart() {
+        wwvPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+        super.doStart();
+    }
+
     public void stopWakeWordVerification() throws Exception {
+        checkBlocking("stopWakeWordVerification");
         state.checkStop();
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.setAppKey(getAppKey());
-        req.header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_DIALOG);
-        req.header.put(Constant.PROP_NAME, UDSConstant.VALUE_NAME_TIANGONG_STOP_WWV);
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        conn.sendText(req.serialize());
-        boolean result = wwvCompleteLatch.await(10, TimeUnit.SECONDS);
+        conn.sendText(buildCommand(VALUE_NAMESPACE_DIALOG, UDSConstant.VALUE_NAME_TIANGONG_STOP_WWV));
+        boolean result = wwvPromise.await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for complete confirmation.task_id:%s",
                     currentTaskId);
@@ -333,9 +340,8 @@ public class DialogAssistant extends SpeechReqProtocol {
     }
 
     public void stop() throws Exception {
-        state.checkStop();
-        conn.sendText(buildStopMessage());
-        boolean result = udsCompleteLatch.await(10, TimeUnit.SECONDS);
+        checkBlocking("stop");
+        boolean result = stopAsync().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for complete confirmation.task_id:%s",
                 currentTaskId);
@@ -344,13 +350,28 @@ public class DialogAssistant extends SpeechReqProtocol {
         }
     }
 
+    /**
+     * 异步结束对话:发送结束识别通知后立即返回,收到对话结果时Future成功,收到TaskFailed或连接关闭时Future失败
+     *
+     * @return
+     */
+    public Future<State> stopAsync() {
+        return sendStop(buildStopMessage());
+    }
+
+    /**
+     * 当前任务的对话结果:收到DialogResultGenerated(或未唤醒的唤醒词校验结果)时成功,
+     * 收到TaskFailed时以{@link com.alibaba.nls.client.protocol.SpeechTaskException}失败
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Future<DialogAssistantResponse> resultFuture() {
+        return (Future<DialogAssistantResponse>)getResultFuture();
+    }
+
     protected String buildStopMessage(){
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.setAppKey(getAppKey());
-        req.header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_DIALOG);
-        req.header.put(Constant.PROP_NAME, VALUE_NAME_DIALOG_STOP_RECOGNITION);
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        return req.serialize();
+        return buildCommand(VALUE_NAMESPACE_DIALOG, VALUE_NAME_DIALOG_STOP_RECOGNITION);
     }
 
     /**
@@ -369,13 +390,8 @@ public class DialogAssistant extends SpeechReqProtocol {
     }
 
     public void query() throws Exception {
-        header.put(Constant.PROP_NAME, UDSConstant.VALUE_NAME_DIALOG_TEXT);
-        String taskId = IdGen.genId();
-        currentTaskId = taskId;
-        this.setTaskId(taskId);
-        conn.sendText(this.serialize());
-        udsCompleteLatch = new CountDownLatch(1);
-        boolean result = udsCompleteLatch.await(10, TimeUnit.SECONDS);
+        checkBlocking("query");
+        boolean result = queryAsync().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for uds complete.task_id:%s",
                 currentTaskId);
@@ -385,6 +401,22 @@ public class DialogAssistant extends SpeechReqProtocol {
 
     }
 
+    /**
+     * 异步文本对话:发送请求后立即返回,Future在收到对话结果时成功
+     *
+     * @return
+     * @throws Exception
+     */
+    public Future<DialogAssistantResponse> queryAsync() throws Exception {
+        header.put(Constant.PROP_NAME, UDSConstant.VALUE_NAME_DIALOG_TEXT);
+        String taskId = IdGen.genId();
+        currentTaskId = taskId;
+        this.setTaskId(taskId);
+        beginTask();
+        conn.sendText(this.serialize());
+        return resultFuture();
+    }
+
     /**
      * 设置对话上下文
      *
@@ -402,7 +434,8 @@ public class DialogAssistant extends SpeechReqProtocol {
     }
 
     public void waitForComplete() throws Exception {
-        udsCompleteLatch.await();
+        checkBlocking("waitForComplete");
+        getCompletionFuture().await();
     }
 
 }
\ No newline at end of file
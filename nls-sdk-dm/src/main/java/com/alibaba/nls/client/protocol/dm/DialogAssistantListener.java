@@ -2,7 +2,6 @@ package com.alibaba.nls.client.protocol.dm;
 
 import java.nio.ByteBuffer;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.transport.ConnectionListener;
 
@@ -16,12 +15,23 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class DialogAssistantListener implements ConnectionListener {
     Logger logger = LoggerFactory.getLogger(DialogAssistantListener.class);
+    private DialogAssistantResponse reusableResponse;
     private DialogAssistant dialogAssistant;
 
     public void setDialogAssistant(DialogAssistant assistant) {
         this.dialogAssistant = assistant;
     }
 
+    /**
+     * 开启后所有回调复用同一个response对象(享元模式),每条消息不再创建新对象.
+     * 此时response只在回调内有效,不能在回调返回后保存或在其它线程中使用
+     *
+     * @param reuse
+     */
+    public void setReuseResponse(boolean reuse) {
+        this.reusableResponse = reuse ? new DialogAssistantResponse() : null;
+    }
+
     /**
      * 服务端已经准备好接收音频数据
      *
@@ -88,86 +98,57 @@ public abstract class DialogAssistantListener implements ConnectionListener {
             return;
         }
         logger.debug("on message:{}", message);
-        DialogAssistantResponse response = JSON.parseObject(message, DialogAssistantResponse.class);
-        if (isReady(response)) {
-            onRecognitionStarted(response);
-            dialogAssistant.markReady();
-        } else if (isVerificationCompleted(response)) {
-            if (onWakeWordVerificationCompleted(response)) {
-                dialogAssistant.setIsWakeWordVerified(true);
-                dialogAssistant.markWwvComplete(true);
-            } else {
-                dialogAssistant.markWwvComplete(false);
-            }
-        } else if (isRecResult(response)) {
-            onRecognitionResultChanged(response);
-        } else if (isRecComplete(response)) {
-            onRecognitionCompleted(response);
-            dialogAssistant.markAsrComplete();
-        } else if (isDialogResultGenerated(response)) {
-            onDialogResultGenerated(response);
-            dialogAssistant.markUdsComplete();
-        } else if (isTaskFailed(response)) {
-            onFail(response);
-            dialogAssistant.markFail();
-        } else {
-            logger.error(message);
-        }
-    }
-
-    @Override
-    public void onMessage(ByteBuffer message) {
-
-    }
-
-    private boolean isReady(DialogAssistantResponse response) {
-        String name = response.getName();
-        if (name.equals(UDSConstant.VALUE_NAME_DIALOG_STARTED)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isVerificationCompleted(DialogAssistantResponse response) {
-        String name = response.getName();
-        if (name.equals(UDSConstant.VALUE_NAME_TIANGONG_WWV_COMPLETED)) {
-            return true;
+        DialogAssistantResponse response = reusableResponse;
+        if (response == null) {
+            response = new DialogAssistantResponse();
         }
-        return false;
-    }
-
-    private boolean isRecResult(DialogAssistantResponse response) {
-        String name = response.getName();
-        if (name.equals(UDSConstant.VALUE_NAME_DIALOG_REC_RESULT_CHANGED)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isRecComplete(DialogAssistantResponse response) {
+        response.bind(message);
         String name = response.getName();
-        if (name.equals(UDSConstant.VALUE_NAME_DIALOG_REC_COMPLETED)) {
-            return true;
+        if (name == null) {
+            logger.error(message);
+            return;
         }
-        return false;
-    }
-
-    private boolean isDialogResultGenerated(DialogAssistantResponse response) {
-        String name = response.getName();
-        if (name.equals(UDSConstant.VALUE_NAME_DIALOG_RESULT_GENERATED)) {
-            return true;
+        switch (name) {
+            case UDSConstant.VALUE_NAME_DIALOG_STARTED:
+                onRecognitionStarted(response);
+                dialogAssistant.markReady();
+                break;
+            case UDSConstant.VALUE_NAME_TIANGONG_WWV_COMPLETED:
+                if (onWakeWordVerificationCompleted(response)) {
+                    dialogAssistant.setIsWakeWordVerified(true);
+                    dialogAssistant.markWwvComplete(true, response);
+                } else {
+                    //复用response时为最终结果创建独立的副本,供resultFuture()在回调之外使用
+                    dialogAssistant.markWwvComplete(
+                        false, reusableResponse == null ? response : response.copyTo(new DialogAssistantResponse()));
+                }
+                break;
+            case UDSConstant.VALUE_NAME_DIALOG_REC_RESULT_CHANGED:
+                onRecognitionResultChanged(response);
+                break;
+            case UDSConstant.VALUE_NAME_DIALOG_REC_COMPLETED:
+                onRecognitionCompleted(response);
+                dialogAssistant.markAsrComplete();
+                break;
+            case UDSConstant.VALUE_NAME_DIALOG_RESULT_GENERATED:
+                onDialogResultGenerated(response);
+                dialogAssistant.markUdsComplete(
+                    reusableResponse == null ? response : response.copyTo(new DialogAssistantResponse()));
+                break;
+            case Constant.VALUE_NAME_TASK_FAILE:
+                onFail(response);
+                dialogAssistant.markFail(response);
+                break;
+            default:
+                logger.error(message);
+                break;
         }
-        return false;
     }
 
 
+    @Override
+    public void onMessage(ByteBuffer message) {
 
-    private boolean isTaskFailed(DialogAssistantResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_TASK_FAILE)) {
-            return true;
-        }
-        return false;
     }
 
 }
\ No newline at end of file
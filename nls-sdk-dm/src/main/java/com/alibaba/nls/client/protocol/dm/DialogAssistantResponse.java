@@ -2,7 +2,7 @@ package com.alibaba.nls.client.protocol.dm;
 
 import java.util.List;
 
-import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.protocol.SpeechResProtocol;
 
 /**
@@ -27,10 +27,16 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public Double getConfidence() {
-        if (payload.get("confidence") == null) {
-            return 0.0;
-        }
-        return Double.parseDouble(payload.get("confidence").toString());
+        return getConfidenceValue();
+    }
+
+    /**
+     * 置信度,不装箱
+     *
+     * @return 字段不存在时返回0
+     */
+    public double getConfidenceValue() {
+        return readDouble(payload, "confidence", 0);
     }
 
     /**
@@ -39,7 +45,7 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public String getAsrResult() {
-        return (String)payload.get("result");
+        return readString(payload, "result");
     }
 
     /**
@@ -48,7 +54,7 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public String getActionContext() {
-        return (String)payload.get("action_context");
+        return readString(payload, "action_context");
     }
 
     /**
@@ -57,7 +63,7 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public String getDisplayText() {
-        return (String)payload.get("display_text");
+        return readString(payload, "display_text");
     }
 
     /**
@@ -66,7 +72,7 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public String getSpokenText() {
-        return (String)payload.get("spoken_text");
+        return readString(payload, "spoken_text");
     }
 
     /**
@@ -75,7 +81,7 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public String getAction() {
-        return (String)payload.get("action");
+        return readString(payload, "action");
     }
 
     /**
@@ -84,9 +90,9 @@ public class DialogAssistantResponse extends SpeechResProtocol {
      * @return
      */
     public List<Object> getActionParams() {
-        JSONArray params = (JSONArray)payload.get("action_params");
+        String params = readRaw(payload, "action_params");
         if (params != null) {
-            return params.toJavaList(Object.class);
+            return JSON.parseArray(params, Object.class);
         } else {
             return null;
         }
@@ -2,7 +2,9 @@ package com.alibaba.nls.client.protocol.dm;
 
 import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.protocol.NlsClient;
-import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.transport.Connection;
+
+import io.netty.util.concurrent.Future;
 
 import static com.alibaba.nls.client.protocol.dm.UDSConstant.*;
 
@@ -18,14 +20,54 @@ public class DialogAssistantV2 extends DialogAssistant {
         header.put(UDSConstant.PROP_MULTI_GROUP, "true");
     }
 
+    /**
+     * 使用已建立的连接创建对话助手,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
+     */
+    public DialogAssistantV2(Connection conn, DialogAssistantListener listener) {
+        super(conn, listener);
+        header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_DIALOG2);
+        header.put(UDSConstant.PROP_MULTI_GROUP, "true");
+    }
+
+    /**
+     * 异步创建v2对话助手,见{@link DialogAssistant#createAsync(NlsClient, DialogAssistantListener)}
+     *
+     * @param client
+     * @param listener
+     * @return
+     */
+    public static Future<DialogAssistantV2> createAsync(NlsClient client, DialogAssistantListener listener) {
+        return createAsync(client.connectAsync(listener), factory(listener));
+    }
+
+    /**
+     * 使用指定token异步创建v2对话助手
+     *
+     * @param client
+     * @param token
+     * @param listener
+     * @return
+     */
+    public static Future<DialogAssistantV2> createAsync(NlsClient client, String token,
+        DialogAssistantListener listener) {
+        return createAsync(client.connectAsync(token, listener), factory(listener));
+    }
+
+    private static SessionFactory<DialogAssistantV2> factory(final DialogAssistantListener listener) {
+        return new SessionFactory<DialogAssistantV2>() {
+            @Override
+            public DialogAssistantV2 create(Connection conn) {
+                return new DialogAssistantV2(conn, listener);
+            }
+        };
+    }
+
     @Override
     protected String buildStopMessage(){
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.setAppKey(getAppKey());
-        req.header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_DIALOG2);
-        req.header.put(Constant.PROP_NAME, VALUE_NAME_DIALOG_STOP_RECOGNITION);
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        return req.serialize();
+        return buildCommand(VALUE_NAMESPACE_DIALOG2, VALUE_NAME_DIALOG_STOP_RECOGNITION);
     }
 
 }
@@ -16,23 +16,12 @@
 
 package com.alibaba.nls.client.protocol.asr;
 
-import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.protocol.NlsClient;
-import com.alibaba.nls.client.protocol.SpeechReqProtocol;
-import com.alibaba.nls.client.util.IdGen;
+import com.alibaba.nls.client.transport.Connection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.alibaba.nls.client.protocol.Constant.VALUE_NAMESPACE_ASR;
-import static com.alibaba.nls.client.protocol.Constant.VALUE_NAME_ASR_STOP;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CLOSED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_COMPLETE;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_FAIL;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_SENT;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP_SENT;
-
 /**
  * @author zhishen.ml
  * @date 2017/11/24
@@ -52,73 +41,33 @@ public class AsyncSpeechRecognizer extends SpeechRecognizer {
     }
 
     /**
-     * 内部调用方法
-     */
-    @Override
-    void markReady() {
-        state = STATE_REQUEST_CONFIRMED;
-
-    }
-
-    /**
-     * 内部调用方法
-     */
-    @Override
-    void markComplete() {
-        state = STATE_COMPLETE;
-
-    }
-
-    /**
-     * 内部调用方法
-     */
-    @Override
-    void markFail() {
-        state = STATE_FAIL;
-
-    }
-
-    /**
-     * 内部调用方法
+     * 使用已建立的连接创建识别器,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
      */
-    @Override
-    void markClosed() {
-        state = STATE_CLOSED;
-
+    public AsyncSpeechRecognizer(Connection conn, SpeechRecognizerListener listener) {
+        super(conn, listener);
     }
 
     /**
-     * 开始语音识别:发送识别请求,同步接收服务端确认
+     * 开始语音识别:发送识别请求后立即返回,不等待服务端确认,可通过{@link #startAsync()}获取确认结果
      *
      * @throws Exception
      */
     @Override
     public void start() throws Exception {
-        state.checkStart();
-        String taskId = IdGen.genId();
-        currentTaskId = taskId;
-        this.setTaskId(taskId);
-        conn.sendText(this.serialize());
-        state = STATE_REQUEST_SENT;
-
+        doStart();
     }
 
     /**
-     * 结束语音识别:发送结束识别通知,接收服务端确认
+     * 结束语音识别:发送结束识别通知后立即返回,可通过{@link #stopAsync()}或{@link #resultFuture()}获取结束结果
      *
      * @throws Exception
      */
     @Override
     public void stop() throws Exception {
-        state.checkStop();
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.setAppKey(getAppKey());
-        req.header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_ASR);
-        req.header.put(Constant.PROP_NAME, VALUE_NAME_ASR_STOP);
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        conn.sendText(req.serialize());
-        state = STATE_STOP_SENT;
-
+        stopAsync();
     }
 
 }
@@ -17,18 +17,22 @@
 package com.alibaba.nls.client.protocol.asr;
 
 import java.io.InputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.nls.client.protocol.Constant;
+import com.alibaba.nls.client.protocol.Endpointer;
 import com.alibaba.nls.client.protocol.InputFormatEnum;
 import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
 import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.protocol.ThroughputStats;
 import com.alibaba.nls.client.transport.Connection;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,9 +41,7 @@ import static com.alibaba.nls.client.protocol.Constant.VALUE_NAME_ASR_STOP;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CLOSED;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_COMPLETE;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CONNECTED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_FAIL;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP_SENT;
 
 /**
  * @author zhishen.ml
@@ -50,9 +52,11 @@ import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP
  */
 public class SpeechRecognizer extends SpeechReqProtocol {
     static Logger logger = LoggerFactory.getLogger(SpeechRecognizer.class);
-    private CountDownLatch completeLatch;
-    private CountDownLatch readyLatch;
-    protected long lastSendTime=-1;
+    private Endpointer endpointer;
+    /**
+     * 尾点检测自动发送结束指令后的结束Future,为null表示未自动结束
+     */
+    private volatile Future<State> autoStopFuture;
 
     /**
      * 如果没有设置format,默认为pcm
@@ -116,6 +120,29 @@ public class SpeechRecognizer extends SpeechReqProtocol {
         payload.put(Constant.PROP_ASR_ENABLE_ITN, enableITN);
     }
 
+    /**
+     * 开启客户端尾点检测,仅支持pcm或开启opu编码时发送的pcm:检测到一句话结束时自动发送结束识别通知,不必等待调用方判断静音后再调用stop,
+     * 之后发送的音频直接丢弃,stop/stopAsync返回自动结束的Future.判定的位置及时间见{@link Endpointer}
+     *
+     * @param endpointer 为null时关闭
+     */
+    public void setEndpointer(Endpointer endpointer) {
+        this.endpointer = endpointer;
+    }
+
+    public Endpointer getEndpointer() {
+        return endpointer;
+    }
+
+    /**
+     * 当前任务是否已由尾点检测自动结束
+     *
+     * @return
+     */
+    public boolean isAutoStopped() {
+        return autoStopFuture != null;
+    }
+
     public SpeechRecognizer(NlsClient client, SpeechRecognizerListener listener)throws Exception {
         Connection conn = client.connect(listener);
         this.conn = conn;
@@ -128,6 +155,51 @@ public class SpeechRecognizer extends SpeechReqProtocol {
         afterConnection(listener);
     }
 
+    /**
+     * 使用已建立的连接创建识别器,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
+     */
+    public SpeechRecognizer(Connection conn, SpeechRecognizerListener listener) {
+        this.conn = conn;
+        afterConnection(listener);
+    }
+
+    /**
+     * 异步创建识别器:建连不阻塞调用线程,连接建立后Future完成.回调在连接的io线程中执行,
+     * 可在回调中设置参数并调用{@link #startAsync()};不能调用start/stop等同步等待服务端应答的方法,
+     * 应答由同一线程读取,等待只会超时
+     *
+     * @param client
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechRecognizer> createAsync(NlsClient client, SpeechRecognizerListener listener) {
+        return createAsync(client.connectAsync(listener), factory(listener));
+    }
+
+    /**
+     * 使用指定token异步创建识别器
+     *
+     * @param client
+     * @param token
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechRecognizer> createAsync(NlsClient client, String token,
+        SpeechRecognizerListener listener) {
+        return createAsync(client.connectAsync(token, listener), factory(listener));
+    }
+
+    private static SessionFactory<SpeechRecognizer> factory(final SpeechRecognizerListener listener) {
+        return new SessionFactory<SpeechRecognizer>() {
+            @Override
+            public SpeechRecognizer create(Connection conn) {
+                return new SpeechRecognizer(conn, listener);
+            }
+        };
+    }
 
     protected void afterConnection(SpeechRecognizerListener listener){
         payload = new HashMap<String, Object>();
@@ -136,7 +208,7 @@ public class SpeechRecognizer extends SpeechReqProtocol {
         payload.put(Constant.PROP_ASR_FORMAT, DEFAULT_FORMAT);
         payload.put(Constant.PROP_ASR_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
         listener.setSpeechRecognizer(this);
-        state = STATE_CONNECTED;
+        transitTo(STATE_CONNECTED);
     }
 
     /**
@@ -145,22 +217,36 @@ public class SpeechRecognizer extends SpeechReqProtocol {
      * @param data
      */
     public void send(byte[] data) {
-        if(state == STATE_COMPLETE){
-            logger.info("state is {} stop send",STATE_COMPLETE);
-            return;
-        }
-        long sendInterval;
-        if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-            logger.warn("too large binary send interval: {} million second",sendInterval);
-        }
-        state.checkSend();
-        try {
-            conn.sendBinary(Arrays.copyOfRange(data, 0, data.length));
-            lastSendTime=System.currentTimeMillis();
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
-        }
+        send(data, 0, data.length);
+    }
+
+    /**
+     * 发送data中从offset开始的length个字节,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public void send(byte[] data, int offset, int length) {
+        doSend(data, offset, length);
+    }
+
+    /**
+     * 发送data中position到limit之间的数据,不改变data的position,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     */
+    public void send(ByteBuffer data) {
+        doSend(data);
+    }
+
+    /**
+     * 发送data中的可读数据,不做拷贝.调用后data的所有权转移给sdk,写出后由sdk释放,调用方不能再修改或release
+     *
+     * @param data
+     */
+    public void send(ByteBuf data) {
+        doSend(data);
     }
 
     /**
@@ -169,27 +255,7 @@ public class SpeechRecognizer extends SpeechReqProtocol {
      * @param ins
      */
     public void send(InputStream ins) {
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[8000];
-            int len = 0;
-            long sendInterval;
-            while ((len = ins.read(bytes)) > 0) {
-                if(state == STATE_COMPLETE){
-                    logger.info("state is {} stop send",STATE_COMPLETE);
-                    return;
-                }
-                if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                    logger.warn("too large binary send interval: {} million seconds",sendInterval);
-                }
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-            }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
-
-        }
+        doSend(ins);
     }
 
     /**
@@ -199,81 +265,97 @@ public class SpeechRecognizer extends SpeechReqProtocol {
      * <li>对于16k pcm 编码数据，建议每发送6400字节 sleep 200 ms/li>
      * <li>对于其它编码格式的数据，用户根据压缩比，自行估算，比如压缩比为10:1的 16k opus ，需要每发送6400/10=640 sleep 200ms/li>
      * </ul>
+     * 发送由{@link com.alibaba.nls.client.protocol.AudioPacer}按batchSize/sleepInterval换算的码率调度,
+     * 读取及发送的耗时不会累积成速率漂移,调用线程只等待发送完毕
      *
      * @param ins           离线音频文件流
      * @param batchSize     每次发送到服务端的数据大小
      * @param sleepInterval 数据发送的间隔，即用于控制发送数据的速率，每次发送batchSize大小的数据后需要sleep的时间
      */
     public void send(InputStream ins, int batchSize, int sleepInterval) {
+        sendPacedAndWait(ins, batchSize, sleepInterval);
+    }
+
+    /**
+     * 离线文件快速发送:以实时码率的speedup倍发送,连接不可写时暂停,即不超过服务端的接收速度.
+     * 一句话识别的中间结果不带处理进度,只支持固定倍数
+     *
+     * @param ins     离线音频文件流,发送结束后由调用方关闭
+     * @param speedup 相对实时码率的倍数,小于等于0表示不限速
+     * @return 发送完毕时以吞吐统计成功,{@link ThroughputStats#getSpeedRatio()}为每秒发送的音频秒数
+     */
+    public Future<ThroughputStats> sendFile(InputStream ins, double speedup) {
+        return sendFast(ins, speedup, 0);
+    }
+
+    @Override
+    protected void sendAudio(byte[] data, int offset, int length) {
+        if (autoStopFuture != null) {
+            return;
+        }
+        super.sendAudio(data, offset, length);
+        if (endpointer != null && endpointer.process(data, offset, length)) {
+            autoStop();
+        }
+    }
+
+    @Override
+    protected boolean isAudioProcessed() {
+        return endpointer != null || super.isAudioProcessed();
+    }
+
+    @Override
+    protected boolean isSendStopped() {
+        return autoStopFuture != null || super.isSendStopped();
+    }
+
+    private synchronized void autoStop() {
+        if (autoStopFuture != null || state != STATE_REQUEST_CONFIRMED) {
+            return;
+        }
+        logger.info("endpoint detected,speech_end:{}ms,endpoint:{}ms,task_id:{}", endpointer.getSpeechEndMillis(),
+            endpointer.getEndpointMillis(), currentTaskId);
+        autoStopFuture = sendStop(buildCommand(VALUE_NAMESPACE_ASR, VALUE_NAME_ASR_STOP));
+    }
 
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[batchSize];
-            int len = 0;
-            long sendInterval;
-            while ((len = ins.read(bytes)) > 0) {
-                if(state == STATE_COMPLETE){
-                    logger.info("state is {} stop send",STATE_COMPLETE);
-                    return;
-                }
-                if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                    logger.warn("too large binary send interval: {} million second",sendInterval);
-                }
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-                Thread.sleep(sleepInterval);
+    @Override
+    protected void doStart() {
+        if (endpointer != null) {
+            if (!opuEncoding && !InputFormatEnum.PCM.getName().equals(getFormat())) {
+                throw new RuntimeException("endpointer only supports pcm,format:" + getFormat());
             }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
+            endpointer.reset();
         }
+        autoStopFuture = null;
+        super.doStart();
     }
 
     /**
      * 内部调用方法
      */
     void markReady() {
-        state = STATE_REQUEST_CONFIRMED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
+        transitTo(STATE_REQUEST_CONFIRMED);
     }
 
     /**
      * 内部调用方法
      */
-    void markComplete() {
-        state = STATE_COMPLETE;
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
-
+    void markComplete(SpeechRecognizerResponse response) {
+        completeTask(response);
     }
 
     /**
      * 内部调用方法
      */
-    void markFail() {
-        state = STATE_FAIL;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+    void markFail(SpeechRecognizerResponse response) {
+        failTask(response);
     }
 
     /**
      * 内部调用方法
      */
     void markClosed() {
-        state = STATE_CLOSED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+        transitTo(STATE_CLOSED);
     }
 
     /**
@@ -282,10 +364,9 @@ public class SpeechRecognizer extends SpeechReqProtocol {
      * @throws Exception
      */
     public void start() throws Exception {
+        checkBlocking("start");
         super.start();
-        completeLatch = new CountDownLatch(1);
-        readyLatch = new CountDownLatch(1);
-        boolean result = readyLatch.await(10, TimeUnit.SECONDS);
+        boolean result = getReadyFuture().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for start confirmation.task_id:%s,state:%s",
                 currentTaskId, state);
@@ -301,19 +382,8 @@ public class SpeechRecognizer extends SpeechReqProtocol {
      * @throws Exception
      */
     public void stop() throws Exception {
-        if(state == STATE_COMPLETE){
-            logger.info("state is {} stop message is discarded",STATE_COMPLETE);
-            return;
-        }
-        state.checkStop();
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.setAppKey(getAppKey());
-        req.header.put(Constant.PROP_NAMESPACE, VALUE_NAMESPACE_ASR);
-        req.header.put(Constant.PROP_NAME, VALUE_NAME_ASR_STOP);
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        conn.sendText(req.serialize());
-        state = STATE_STOP_SENT;
-        boolean result = completeLatch.await(10, TimeUnit.SECONDS);
+        checkBlocking("stop");
+        boolean result = stopAsync().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for complete confirmation.task_id:%s,state:%s",
                 currentTaskId, state);
@@ -322,6 +392,36 @@ public class SpeechRecognizer extends SpeechReqProtocol {
         }
     }
 
+    /**
+     * 异步结束语音识别:发送结束识别通知后立即返回,收到RecognitionCompleted时Future成功,
+     * 收到TaskFailed或连接关闭时Future失败.识别已结束时不再发送,直接返回成功的Future;
+     * 已由尾点检测自动结束时返回自动结束的Future
+     *
+     * @return
+     */
+    public synchronized Future<State> stopAsync() {
+        if (autoStopFuture != null) {
+            return autoStopFuture;
+        }
+        State current = state;
+        if(current == STATE_COMPLETE){
+            logger.info("state is {} stop message is discarded",STATE_COMPLETE);
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(current);
+        }
+        return sendStop(buildCommand(VALUE_NAMESPACE_ASR, VALUE_NAME_ASR_STOP));
+    }
+
+    /**
+     * 当前任务的最终识别结果:收到RecognitionCompleted时成功,
+     * 收到TaskFailed时以{@link com.alibaba.nls.client.protocol.SpeechTaskException}失败
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Future<SpeechRecognizerResponse> resultFuture() {
+        return (Future<SpeechRecognizerResponse>)getResultFuture();
+    }
+
     /**
      * 关闭连接
      */
@@ -18,7 +18,6 @@ package com.alibaba.nls.client.protocol.asr;
 
 import java.nio.ByteBuffer;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.transport.ConnectionListener;
 
@@ -32,12 +31,23 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class SpeechRecognizerListener implements ConnectionListener {
     Logger logger = LoggerFactory.getLogger(SpeechRecognizerListener.class);
+    private SpeechRecognizerResponse reusableResponse;
     protected SpeechRecognizer recognizer;
 
     public void setSpeechRecognizer(SpeechRecognizer recognizer) {
         this.recognizer = recognizer;
     }
 
+    /**
+     * 开启后所有回调复用同一个response对象(享元模式),每条消息不再创建新对象.
+     * 此时response只在回调内有效,不能在回调返回后保存或在其它线程中使用
+     *
+     * @param reuse
+     */
+    public void setReuseResponse(boolean reuse) {
+        this.reusableResponse = reuse ? new SpeechRecognizerResponse() : null;
+    }
+
     /**
      * 语音识别过程中返回的结果
      *
@@ -87,59 +97,45 @@ public abstract class SpeechRecognizerListener implements ConnectionListener {
             return;
         }
         logger.debug("on message:{}", message);
-        SpeechRecognizerResponse response = JSON.parseObject(message, SpeechRecognizerResponse.class);
-        if (isRecReady(response)) {
-            recognizer.markReady();
-            onStarted(response);
-        } else if (isRecResult(response)) {
-            onRecognitionResultChanged(response);
-        } else if (isRecComplete(response)) {
-            recognizer.markComplete();
-            onRecognitionCompleted(response);
-        } else if (isTaskFailed(response)) {
-            recognizer.markFail();
-            onFail(response);
-        } else {
+        SpeechRecognizerResponse response = reusableResponse;
+        if (response == null) {
+            response = new SpeechRecognizerResponse();
+        }
+        response.bind(message);
+        String name = response.getName();
+        if (name == null) {
             logger.error(message);
+            return;
+        }
+        switch (name) {
+            case Constant.VALUE_NAME_ASR_STARTED:
+                recognizer.markReady();
+                onStarted(response);
+                break;
+            case Constant.VALUE_NAME_ASR_RESULT_CHANGE:
+                onRecognitionResultChanged(response);
+                break;
+            case Constant.VALUE_NAME_ASR_COMPLETE:
+                //复用response时为最终结果创建独立的副本,供resultFuture()在回调之外使用
+                recognizer.markComplete(
+                    reusableResponse == null ? response : response.copyTo(new SpeechRecognizerResponse()));
+                onRecognitionCompleted(response);
+                break;
+            case Constant.VALUE_NAME_TASK_FAILE:
+                recognizer.markFail(response);
+                onFail(response);
+                break;
+            default:
+                logger.error(message);
+                break;
         }
 
     }
 
+
     @Override
     public void onMessage(ByteBuffer message) {
 
     }
 
-    private boolean isRecReady(SpeechRecognizerResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_STARTED)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isRecResult(SpeechRecognizerResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_RESULT_CHANGE)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isRecComplete(SpeechRecognizerResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_COMPLETE)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isTaskFailed(SpeechRecognizerResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_TASK_FAILE)) {
-            return true;
-        }
-        return false;
-    }
-
 }
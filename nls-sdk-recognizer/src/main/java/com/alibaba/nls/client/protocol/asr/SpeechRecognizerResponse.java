@@ -31,7 +31,7 @@ public class SpeechRecognizerResponse extends SpeechResProtocol {
      * @return
      */
     public String getRecognizedText() {
-        return (String)payload.get("result");
+        return readString(payload, "result");
     }
 
     /**
@@ -40,7 +40,7 @@ public class SpeechRecognizerResponse extends SpeechResProtocol {
      * @return
      */
     public String getLexicalText() {
-        return (String)payload.get("lexical_result");
+        return readString(payload, "lexical_result");
     }
 
     /**
@@ -49,11 +49,15 @@ public class SpeechRecognizerResponse extends SpeechResProtocol {
      * @return
      */
     public Double getConfidence() {
+        return payload.containsKey("confidence") ? getConfidenceValue() : null;
+    }
 
-        Object o=payload.get("confidence");
-        if(o!=null){
-            return Double.parseDouble(o.toString());
-        }
-        return null;
+    /**
+     * 置信度,不装箱
+     *
+     * @return 字段不存在时返回0
+     */
+    public double getConfidenceValue() {
+        return readDouble(payload, "confidence", 0);
     }
 }
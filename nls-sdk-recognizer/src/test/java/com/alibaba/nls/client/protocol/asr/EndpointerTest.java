@@ -0,0 +1,297 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol.asr;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.nls.client.protocol.Constant;
+import com.alibaba.nls.client.protocol.Endpointer;
+import com.alibaba.nls.client.protocol.SampleRateEnum;
+import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.transport.Connection;
+import com.alibaba.nls.client.transport.WritabilityListener;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointerTest {
+    /**
+     * 16k采样,每帧10ms,320字节
+     */
+    private static final int FRAME_BYTES = 320;
+
+    @Test
+    public void testEndpointAtThresholdFrame() {
+        Endpointer endpointer = new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300);
+        byte[] audio = concat(silence(500), tone(500), silence(1000));
+        //逐帧检测,记录返回true的帧
+        int detectedFrame = -1;
+        for (int i = 0; i < audio.length / FRAME_BYTES; i++) {
+            if (endpointer.process(audio, i * FRAME_BYTES, FRAME_BYTES)) {
+                assertEquals(-1, detectedFrame);
+                detectedFrame = i + 1;
+            }
+        }
+        //语音在1000ms结束,之后第30帧静音达到阈值
+        assertEquals(1000, endpointer.getSpeechEndMillis());
+        assertEquals(130, detectedFrame);
+        assertEquals(detectedFrame * 10, endpointer.getEndpointMillis());
+        assertEquals(1300, endpointer.getEndpointMillis());
+        assertTrue(endpointer.isDetected());
+        assertTrue(endpointer.getDetectedAt() > 0);
+    }
+
+    @Test
+    public void testChunkedInput() {
+        byte[] audio = concat(silence(500), tone(500), silence(1000));
+        Endpointer endpointer = new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300);
+        int detected = 0;
+        //不按帧长对齐的分块,判定位置相同
+        for (int off = 0; off < audio.length; off += 333) {
+            if (endpointer.process(audio, off, Math.min(333, audio.length - off))) {
+                detected++;
+            }
+        }
+        assertEquals(1, detected);
+        assertEquals(1300, endpointer.getEndpointMillis());
+    }
+
+    @Test
+    public void testLeadingSilence() {
+        Endpointer endpointer = new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300);
+        byte[] audio = silence(2000);
+        assertFalse(endpointer.process(audio, 0, audio.length));
+        assertFalse(endpointer.isDetected());
+        assertEquals(-1, endpointer.getSpeechEndMillis());
+        assertEquals(-1, endpointer.getEndpointMillis());
+        assertEquals(-1, endpointer.getDetectedAt());
+
+        //短于minSpeechMillis的声音不算语音开始
+        audio = concat(tone(50), silence(1000));
+        assertFalse(endpointer.process(audio, 0, audio.length));
+        assertFalse(endpointer.isDetected());
+    }
+
+    @Test
+    public void testSilenceBelowThreshold() {
+        Endpointer endpointer = new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300);
+        byte[] audio = concat(tone(300), silence(290), tone(300), silence(290));
+        assertFalse(endpointer.process(audio, 0, audio.length));
+        assertEquals(890, endpointer.getSpeechEndMillis());
+
+        //reset后重新检测
+        endpointer.reset();
+        audio = concat(tone(300), silence(300));
+        assertTrue(endpointer.process(audio, 0, audio.length));
+        assertEquals(600, endpointer.getEndpointMillis());
+        assertFalse(endpointer.process(audio, 0, audio.length));
+    }
+
+    @Test
+    public void testAutoStopOnce() throws Exception {
+        FakeConnection conn = new FakeConnection();
+        SpeechRecognizer recognizer = new SpeechRecognizer(conn, new NoopListener());
+        Endpointer endpointer = new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300);
+        recognizer.setEndpointer(endpointer);
+        recognizer.startAsync();
+        recognizer.markReady();
+
+        //每次发送100ms
+        byte[] audio = concat(silence(500), tone(500), silence(1000));
+        for (int off = 0; off < audio.length; off += 3200) {
+            recognizer.send(audio, off, 3200);
+            if (off < 1200 * 32) {
+                assertEquals(0, conn.stopCount());
+            }
+        }
+        assertEquals(1, conn.stopCount());
+        assertTrue(recognizer.isAutoStopped());
+        assertEquals(1300, endpointer.getEndpointMillis());
+        //判定所在的那次发送完整发出,之后的音频丢弃
+        assertEquals(1300 * 32, conn.binaryBytes);
+
+        //stopAsync返回自动结束的Future,不再发送结束通知
+        Future<SpeechReqProtocol.State> future = recognizer.stopAsync();
+        assertSame(future, recognizer.stopAsync());
+        assertEquals(1, conn.stopCount());
+    }
+
+    @Test
+    public void testLeadingSilenceNoAutoStop() throws Exception {
+        FakeConnection conn = new FakeConnection();
+        SpeechRecognizer recognizer = new SpeechRecognizer(conn, new NoopListener());
+        recognizer.setEndpointer(new Endpointer(SampleRateEnum.SAMPLE_RATE_16K, 300));
+        recognizer.startAsync();
+        recognizer.markReady();
+
+        byte[] audio = silence(3000);
+        for (int off = 0; off < audio.length; off += 3200) {
+            recognizer.send(audio, off, 3200);
+        }
+        assertEquals(0, conn.stopCount());
+        assertFalse(recognizer.isAutoStopped());
+        assertEquals(audio.length, conn.binaryBytes);
+    }
+
+    /**
+     * 16k采样的440Hz正弦波
+     */
+    private static byte[] tone(int millis) {
+        byte[] data = new byte[millis * 32];
+        for (int i = 0; i < data.length / 2; i++) {
+            short sample = (short)(8000 * Math.sin(2 * Math.PI * 440 * i / 16000));
+            data[2 * i] = (byte)sample;
+            data[2 * i + 1] = (byte)(sample >> 8);
+        }
+        return data;
+    }
+
+    private static byte[] silence(int millis) {
+        return new byte[millis * 32];
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static class NoopListener extends SpeechRecognizerListener {
+        @Override
+        public void onRecognitionResultChanged(SpeechRecognizerResponse response) {
+        }
+
+        @Override
+        public void onRecognitionCompleted(SpeechRecognizerResponse response) {
+        }
+
+        @Override
+        public void onStarted(SpeechRecognizerResponse response) {
+        }
+
+        @Override
+        public void onFail(SpeechRecognizerResponse response) {
+        }
+    }
+
+    /**
+     * 记录发送的指令及音频字节数,不连接服务端
+     */
+    private static class FakeConnection implements Connection {
+        final List<String> texts = new ArrayList<String>();
+        long binaryBytes;
+
+        int stopCount() {
+            int count = 0;
+            for (String text : texts) {
+                if (text.contains(Constant.VALUE_NAME_ASR_STOP)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void sendText(String payload) {
+            texts.add(payload);
+        }
+
+        @Override
+        public void sendBinary(byte[] payload) {
+            binaryBytes += payload.length;
+        }
+
+        @Override
+        public void sendBinary(byte[] payload, int offset, int length) {
+            binaryBytes += length;
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer payload) {
+            binaryBytes += payload.remaining();
+        }
+
+        @Override
+        public void sendBinary(ByteBuf payload) {
+            binaryBytes += payload.readableBytes();
+            payload.release();
+        }
+
+        @Override
+        public void sendPing() {
+        }
+
+        @Override
+        public String getId() {
+            return "fake";
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return true;
+        }
+
+        @Override
+        public boolean awaitWritable(long timeoutMillis) {
+            return true;
+        }
+
+        @Override
+        public void setWritabilityListener(WritabilityListener listener) {
+        }
+
+        @Override
+        public boolean inEventLoop() {
+            return false;
+        }
+
+        @Override
+        public long getConnectingLatency() {
+            return 0;
+        }
+
+        @Override
+        public long getWsHandshakeLatency() {
+            return 0;
+        }
+
+        @Override
+        public boolean isSessionResumed() {
+            return false;
+        }
+    }
+}
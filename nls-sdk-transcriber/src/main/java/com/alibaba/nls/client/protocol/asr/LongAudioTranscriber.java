@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol.asr;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.nls.client.protocol.InputFormatEnum;
+import com.alibaba.nls.client.protocol.NlsClient;
+import com.alibaba.nls.client.protocol.SampleRateEnum;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 长音频分段并行识别:将16bit单声道的pcm或wav按静音位置切成有长度上限的分段,
+ * 用同一个NlsClient的多个实时转写会话并行识别,结果按音频顺序合并,句子及分词的时间换算为在整个音频中的位置.
+ * 只缓存正在识别及排队的分段,总大小不超过maxInFlightBytes
+ */
+public class LongAudioTranscriber {
+    static Logger logger = LoggerFactory.getLogger(LongAudioTranscriber.class);
+
+    /**
+     * 每个分段会话的额外设置,如开启标点,分词等.format及sampleRate由本类设置
+     */
+    public interface SessionConfigurer {
+        void configure(SpeechTranscriber transcriber);
+    }
+
+    private final NlsClient client;
+    private String appKey;
+    private SampleRateEnum sampleRate = SampleRateEnum.SAMPLE_RATE_16K;
+    private int parallelism = 4;
+    private long minSegmentMillis = 10000;
+    private long maxSegmentMillis = 60000;
+    private long silenceMillis = 300;
+    private int silenceThreshold = 300;
+    private long maxInFlightBytes = 64L * 1024 * 1024;
+    private double speedup = 0;
+    private SessionConfigurer sessionConfigurer;
+
+    public LongAudioTranscriber(NlsClient client) {
+        this.client = client;
+    }
+
+    public void setAppKey(String appKey) {
+        this.appKey = appKey;
+    }
+
+    /**
+     * pcm输入的采样率,默认16000.wav输入以文件头为准
+     *
+     * @param sampleRate
+     */
+    public void setSampleRate(SampleRateEnum sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 同时识别的分段数,默认4
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("invalid parallelism:" + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 分段长度范围,默认10秒到60秒.不短于minMillis时遇到静音即切分,达到maxMillis时从最安静的位置切分
+     *
+     * @param minMillis
+     * @param maxMillis 至少比minMillis长20毫秒(一个能量帧)
+     */
+    public void setSegmentMillis(long minMillis, long maxMillis) {
+        PcmSegmenter.checkSegmentMillis(minMillis, maxMillis);
+        this.minSegmentMillis = minMillis;
+        this.maxSegmentMillis = maxMillis;
+    }
+
+    /**
+     * 静音判定,默认连续300ms平均幅度低于300
+     *
+     * @param silenceMillis 可以切分的最短静音时长,单位毫秒
+     * @param threshold     16bit采样平均幅度低于该值的帧视为静音
+     */
+    public void setSilence(long silenceMillis, int threshold) {
+        this.silenceMillis = silenceMillis;
+        this.silenceThreshold = threshold;
+    }
+
+    /**
+     * 正在识别及排队的分段占用内存上限,单位字节,默认64M.达到上限时暂停读取,直到有分段识别完成
+     *
+     * @param maxInFlightBytes
+     */
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * 分段音频的发送倍速,默认0即不限速,受连接可写状态约束
+     *
+     * @param speedup
+     */
+    public void setSpeedup(double speedup) {
+        this.speedup = speedup;
+    }
+
+    public void setSessionConfigurer(SessionConfigurer sessionConfigurer) {
+        this.sessionConfigurer = sessionConfigurer;
+    }
+
+    public List<TranscriptionSentence> transcribe(File file) throws Exception {
+        InputStream ins = new FileInputStream(file);
+        try {
+            return transcribe(ins);
+        } finally {
+            ins.close();
+        }
+    }
+
+    /**
+     * 识别整个音频,阻塞直到所有分段完成.任一分段失败时停止其余分段并抛出异常
+     *
+     * @param ins pcm或wav,由调用方关闭
+     * @return 按时间顺序排列的句子
+     * @throws Exception
+     */
+    public List<TranscriptionSentence> transcribe(InputStream ins) throws Exception {
+        InputStream in = ins.markSupported() ? ins : new BufferedInputStream(ins);
+        int wavRate = PcmSegmenter.skipWavHeader(in);
+        final SampleRateEnum rate = wavRate < 0 ? sampleRate : toSampleRate(wavRate);
+        PcmSegmenter segmenter = new PcmSegmenter(in, rate.value, minSegmentMillis, maxSegmentMillis,
+            silenceMillis, silenceThreshold);
+        //按KB计数,避免超过int范围
+        final int totalPermits = (int)Math.max(Math.min(maxInFlightBytes / 1024, Integer.MAX_VALUE), 1);
+        final Semaphore memory = new Semaphore(totalPermits);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+            new DefaultThreadFactory("nls-long-audio", true));
+        List<Future<List<TranscriptionSentence>>> futures = new ArrayList<Future<List<TranscriptionSentence>>>();
+        long start = System.currentTimeMillis();
+        long audioMillis = 0;
+        try {
+            PcmSegmenter.Segment segment;
+            while ((segment = segmenter.next()) != null) {
+                final int permits = Math.min(Math.max(segment.data.length / 1024, 1), totalPermits);
+                memory.acquire(permits);
+                checkFailure(futures);
+                final PcmSegmenter.Segment current = segment;
+                futures.add(executor.submit(new Callable<List<TranscriptionSentence>>() {
+                    @Override
+                    public List<TranscriptionSentence> call() throws Exception {
+                        try {
+                            return recognize(current, rate);
+                        } finally {
+                            memory.release(permits);
+                        }
+                    }
+                }));
+                audioMillis = segment.offsetMillis + segment.data.length * 1000L / (rate.value * 2);
+            }
+            List<TranscriptionSentence> sentences = new ArrayList<TranscriptionSentence>();
+            for (Future<List<TranscriptionSentence>> future : futures) {
+                sentences.addAll(get(future));
+            }
+            for (int i = 0; i < sentences.size(); i++) {
+                sentences.get(i).index = i + 1;
+            }
+            long cost = System.currentTimeMillis() - start;
+            logger.info("long audio transcribed,segments:{},sentences:{},audio:{}ms,wall:{}ms", futures.size(),
+                sentences.size(), audioMillis, cost);
+            return sentences;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<TranscriptionSentence> recognize(final PcmSegmenter.Segment segment, SampleRateEnum rate)
+        throws Exception {
+        final List<TranscriptionSentence> sentences = Collections.synchronizedList(
+            new ArrayList<TranscriptionSentence>());
+        SpeechTranscriber transcriber = new SpeechTranscriber(client, new SpeechTranscriberListener() {
+            @Override
+            public void onTranscriberStart(SpeechTranscriberResponse response) {
+            }
+
+            @Override
+            public void onSentenceBegin(SpeechTranscriberResponse response) {
+            }
+
+            @Override
+            public void onSentenceEnd(SpeechTranscriberResponse response) {
+                sentences.add(TranscriptionSentence.of(response, segment.index, segment.offsetMillis));
+            }
+
+            @Override
+            public void onTranscriptionResultChange(SpeechTranscriberResponse response) {
+            }
+
+            @Override
+            public void onTranscriptionComplete(SpeechTranscriberResponse response) {
+            }
+
+            @Override
+            public void onFail(SpeechTranscriberResponse response) {
+                logger.error("segment {} failed,task_id:{},status:{},status_text:{}", segment.index,
+                    response.getTaskId(), response.getStatus(), response.getStatusText());
+            }
+        });
+        try {
+            if (appKey != null) {
+                transcriber.setAppKey(appKey);
+            }
+            transcriber.setFormat(InputFormatEnum.PCM);
+            transcriber.setSampleRate(rate);
+            if (sessionConfigurer != null) {
+                sessionConfigurer.configure(transcriber);
+            }
+            transcriber.start();
+            transcriber.sendFile(new ByteArrayInputStream(segment.data), speedup).sync();
+            transcriber.stopAsync();
+            //倍速发送时服务端可能还有积压,按分段时长留出处理时间
+            io.netty.util.concurrent.Future<SpeechTranscriberResponse> result = transcriber.resultFuture();
+            if (!result.await(maxSegmentMillis + 10000, TimeUnit.MILLISECONDS)) {
+                throw new Exception(String.format("timeout waiting for segment %d complete,task_id:%s",
+                    segment.index, transcriber.getTaskId()));
+            }
+            if (!result.isSuccess()) {
+                throw new Exception("segment " + segment.index + " failed", result.cause());
+            }
+            return new ArrayList<TranscriptionSentence>(sentences);
+        } finally {
+            transcriber.close();
+        }
+    }
+
+    private static void checkFailure(List<Future<List<TranscriptionSentence>>> futures) throws Exception {
+        for (Future<List<TranscriptionSentence>> future : futures) {
+            if (future.isDone()) {
+                get(future);
+            }
+        }
+    }
+
+    private static List<TranscriptionSentence> get(Future<List<TranscriptionSentence>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception)cause : e;
+        }
+    }
+
+    private static SampleRateEnum toSampleRate(int rate) {
+        for (SampleRateEnum value : SampleRateEnum.values()) {
+            if (value.value == rate) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("unsupported sample rate:" + rate);
+    }
+}
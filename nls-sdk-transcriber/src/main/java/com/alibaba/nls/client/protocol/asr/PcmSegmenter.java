@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol.asr;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 按静音位置切分16bit单声道pcm:每段不短于minMillis,在其后出现连续silenceMillis的静音时从静音中点切开;
+ * 达到maxMillis仍没有静音时从minMillis之后能量最低的一帧切开.只缓存当前一段,适用于任意长度的流
+ */
+class PcmSegmenter {
+    /**
+     * 计算能量的帧长,单位毫秒
+     */
+    static final int FRAME_MILLIS = 20;
+
+    static class Segment {
+        final int index;
+        final long offsetMillis;
+        final byte[] data;
+
+        Segment(int index, long offsetMillis, byte[] data) {
+            this.index = index;
+            this.offsetMillis = offsetMillis;
+            this.data = data;
+        }
+    }
+
+    private final InputStream ins;
+    private final int bytesPerSecond;
+    private final int frameBytes;
+    private final int minFrames;
+    private final int maxFrames;
+    private final int silenceFrames;
+    private final int silenceThreshold;
+
+    private final byte[] buffer;
+    /**
+     * 缓冲区中每帧的平均幅度
+     */
+    private final int[] energies;
+    private int frames;
+    private int bufferedBytes;
+    /**
+     * 已切出的字节数,即缓冲区起点在整个音频中的位置
+     */
+    private long consumedBytes;
+    private int nextIndex;
+    private boolean eof;
+
+    PcmSegmenter(InputStream ins, int sampleRate, long minMillis, long maxMillis, long silenceMillis,
+                 int silenceThreshold) {
+        checkSegmentMillis(minMillis, maxMillis);
+        this.ins = ins;
+        this.bytesPerSecond = sampleRate * 2;
+        this.frameBytes = bytesPerSecond * FRAME_MILLIS / 1000;
+        this.minFrames = (int)(minMillis / FRAME_MILLIS);
+        this.maxFrames = (int)(maxMillis / FRAME_MILLIS);
+        this.silenceFrames = Math.max((int)(silenceMillis / FRAME_MILLIS), 1);
+        this.silenceThreshold = silenceThreshold;
+        this.buffer = new byte[maxFrames * frameBytes];
+        this.energies = new int[maxFrames];
+    }
+
+    /**
+     * 达到maxMillis时从minMillis之后切分,两者之间至少需要一帧
+     *
+     * @throws IllegalArgumentException minMillis小于等于0或maxMillis小于minMillis+{@link #FRAME_MILLIS}
+     */
+    static void checkSegmentMillis(long minMillis, long maxMillis) {
+        if (minMillis <= 0 || maxMillis < minMillis + FRAME_MILLIS) {
+            throw new IllegalArgumentException("invalid segment length,min:" + minMillis + ",max:" + maxMillis
+                + ",max should be at least " + FRAME_MILLIS + "ms longer than min");
+        }
+    }
+
+    /**
+     * 切出下一段
+     *
+     * @return 音频已读完时返回null
+     * @throws IOException
+     */
+    Segment next() throws IOException {
+        while (!eof && frames < maxFrames) {
+            int n = readFully(ins, buffer, bufferedBytes, frameBytes);
+            if (n <= 0) {
+                eof = true;
+                break;
+            }
+            energies[frames++] = meanAmplitude(buffer, bufferedBytes, n);
+            bufferedBytes += n;
+            if (n < frameBytes) {
+                eof = true;
+                break;
+            }
+            if (frames >= minFrames + silenceFrames && isSilentTail()) {
+                return cut(frames - silenceFrames / 2);
+            }
+        }
+        if (frames == 0) {
+            return null;
+        }
+        if (eof) {
+            return cut(frames);
+        }
+        int quietest = minFrames;
+        for (int i = minFrames + 1; i < frames; i++) {
+            if (energies[i] < energies[quietest]) {
+                quietest = i;
+            }
+        }
+        return cut(quietest + 1);
+    }
+
+    private boolean isSilentTail() {
+        for (int i = frames - silenceFrames; i < frames; i++) {
+            if (energies[i] >= silenceThreshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Segment cut(int cutFrames) {
+        int cutBytes = Math.min(cutFrames * frameBytes, bufferedBytes);
+        byte[] data = new byte[cutBytes];
+        System.arraycopy(buffer, 0, data, 0, cutBytes);
+        System.arraycopy(buffer, cutBytes, buffer, 0, bufferedBytes - cutBytes);
+        System.arraycopy(energies, cutFrames, energies, 0, frames - cutFrames);
+        frames -= cutFrames;
+        bufferedBytes -= cutBytes;
+        Segment segment = new Segment(nextIndex++, consumedBytes * 1000 / bytesPerSecond, data);
+        consumedBytes += cutBytes;
+        return segment;
+    }
+
+    /**
+     * 16bit小端采样的平均幅度
+     */
+    static int meanAmplitude(byte[] data, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = offset, end = offset + samples * 2; i < end; i += 2) {
+            int sample = (short)((data[i + 1] << 8) | (data[i] & 0xff));
+            sum += sample < 0 ? -sample : sample;
+        }
+        return (int)(sum / samples);
+    }
+
+    /**
+     * 跳过wav文件头,流需要支持mark
+     *
+     * @param ins
+     * @return wav的采样率,不是wav时返回-1且流的位置不变
+     * @throws IOException
+     */
+    static int skipWavHeader(InputStream ins) throws IOException {
+        ins.mark(12);
+        byte[] head = new byte[12];
+        if (readFully(ins, head, 0, 12) < 12 || !"RIFF".equals(new String(head, 0, 4, "US-ASCII"))
+            || !"WAVE".equals(new String(head, 8, 4, "US-ASCII"))) {
+            ins.reset();
+            return -1;
+        }
+        int sampleRate = -1;
+        byte[] chunk = new byte[8];
+        while (readFully(ins, chunk, 0, 8) == 8) {
+            String id = new String(chunk, 0, 4, "US-ASCII");
+            long size = (chunk[4] & 0xffL) | (chunk[5] & 0xffL) << 8 | (chunk[6] & 0xffL) << 16
+                | (chunk[7] & 0xffL) << 24;
+            if ("data".equals(id)) {
+                if (sampleRate < 0) {
+                    throw new IOException("invalid wav,fmt chunk is missing");
+                }
+                return sampleRate;
+            }
+            if ("fmt ".equals(id)) {
+                byte[] fmt = new byte[16];
+                if (readFully(ins, fmt, 0, 16) < 16) {
+                    break;
+                }
+                int channels = (fmt[2] & 0xff) | (fmt[3] & 0xff) << 8;
+                int bits = (fmt[14] & 0xff) | (fmt[15] & 0xff) << 8;
+                if (channels != 1 || bits != 16) {
+                    throw new IOException("only 16bit mono wav is supported,channels:" + channels + ",bits:" + bits);
+                }
+                sampleRate = (fmt[4] & 0xff) | (fmt[5] & 0xff) << 8 | (fmt[6] & 0xff) << 16 | (fmt[7] & 0xff) << 24;
+                size -= 16;
+            }
+            //chunk按偶数字节对齐
+            skipFully(ins, size + (size & 1));
+        }
+        throw new IOException("invalid wav,data chunk is missing");
+    }
+
+    private static int readFully(InputStream ins, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = ins.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static void skipFully(InputStream ins, long n) throws IOException {
+        while (n > 0) {
+            long skipped = ins.skip(n);
+            if (skipped <= 0) {
+                if (ins.read() < 0) {
+                    throw new IOException("unexpected end of wav header");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
@@ -17,9 +17,8 @@
 package com.alibaba.nls.client.protocol.asr;
 
 import java.io.InputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.nls.client.protocol.Constant;
@@ -27,17 +26,17 @@ import com.alibaba.nls.client.protocol.InputFormatEnum;
 import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
 import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.protocol.ThroughputStats;
 import com.alibaba.nls.client.transport.Connection;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CLOSED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_COMPLETE;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_CONNECTED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_FAIL;
 import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQUEST_CONFIRMED;
-import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP_SENT;
 
 /**
  * @author zhishen.ml
@@ -49,10 +48,6 @@ import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_STOP
 public class SpeechTranscriber extends SpeechReqProtocol {
     static Logger logger = LoggerFactory.getLogger(SpeechTranscriber.class);
 
-    private CountDownLatch completeLatch;
-    private CountDownLatch readyLatch;
-    protected long lastSendTime=-1;
-
     protected SpeechTranscriberListener speechTranscriberListener;
 
     public SpeechTranscriberListener getSpeechTranscriberListener() {
@@ -132,6 +127,52 @@ public class SpeechTranscriber extends SpeechReqProtocol {
         afterConnection(listener);
     }
 
+    /**
+     * 使用已建立的连接创建转写器,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
+     */
+    public SpeechTranscriber(Connection conn, SpeechTranscriberListener listener) {
+        this.conn = conn;
+        afterConnection(listener);
+    }
+
+    /**
+     * 异步创建转写器:建连不阻塞调用线程,连接建立后Future完成.回调在连接的io线程中执行,
+     * 可在回调中设置参数并调用{@link #startAsync()};不能调用start/stop等同步等待服务端应答的方法,
+     * 应答由同一线程读取,等待只会超时
+     *
+     * @param client
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechTranscriber> createAsync(NlsClient client, SpeechTranscriberListener listener) {
+        return createAsync(client.connectAsync(listener), factory(listener));
+    }
+
+    /**
+     * 使用指定token异步创建转写器
+     *
+     * @param client
+     * @param token
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechTranscriber> createAsync(NlsClient client, String token,
+        SpeechTranscriberListener listener) {
+        return createAsync(client.connectAsync(token, listener), factory(listener));
+    }
+
+    private static SessionFactory<SpeechTranscriber> factory(final SpeechTranscriberListener listener) {
+        return new SessionFactory<SpeechTranscriber>() {
+            @Override
+            public SpeechTranscriber create(Connection conn) {
+                return new SpeechTranscriber(conn, listener);
+            }
+        };
+    }
+
     protected void afterConnection(SpeechTranscriberListener listener) {
         payload = new HashMap<String, Object>();
         header.put(Constant.PROP_NAMESPACE, Constant.VALUE_NAMESPACE_ASR_TRANSCRIPTION);
@@ -140,7 +181,7 @@ public class SpeechTranscriber extends SpeechReqProtocol {
         payload.put(Constant.PROP_ASR_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
         listener.setSpeechTranscriber(this);
         speechTranscriberListener = listener;
-        state = STATE_CONNECTED;
+        transitTo(STATE_CONNECTED);
     }
 
     /**
@@ -149,18 +190,36 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * @param data
      */
     public void send(byte[] data) {
-        long sendInterval;
-        if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-            logger.warn("too large binary send interval: {} million second",sendInterval);
-        }
-        state.checkSend();
-        try {
-            conn.sendBinary(Arrays.copyOfRange(data, 0, data.length));
-            lastSendTime=System.currentTimeMillis();
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
-        }
+        send(data, 0, data.length);
+    }
+
+    /**
+     * 发送data中从offset开始的length个字节,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public void send(byte[] data, int offset, int length) {
+        doSend(data, offset, length);
+    }
+
+    /**
+     * 发送data中position到limit之间的数据,不改变data的position,数据在返回前已拷贝,data可以立即复用
+     *
+     * @param data
+     */
+    public void send(ByteBuffer data) {
+        doSend(data);
+    }
+
+    /**
+     * 发送data中的可读数据,不做拷贝.调用后data的所有权转移给sdk,写出后由sdk释放,调用方不能再修改或release
+     *
+     * @param data
+     */
+    public void send(ByteBuf data) {
+        doSend(data);
     }
 
     /**
@@ -169,23 +228,7 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * @param ins
      */
     public void send(InputStream ins) {
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[8000];
-            int len = 0;
-            long sendInterval;
-            while ((len = ins.read(bytes)) > 0) {
-                if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                    logger.warn("too large binary send interval: {} million second",sendInterval);
-                }
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-            }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
-
-        }
+        doSend(ins);
     }
 
     /**
@@ -195,28 +238,49 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * <li>对于16k pcm 编码数据，建议每发送6400字节 sleep 200 ms/li>
      * <li>对于其它编码格式的数据，用户根据压缩比，自行估算，比如压缩比为10:1的 16k opus ，需要每发送6400/10=640 sleep 200ms/li>
      * </ul>
+     * 发送由{@link com.alibaba.nls.client.protocol.AudioPacer}按batchSize/sleepInterval换算的码率调度,
+     * 读取及发送的耗时不会累积成速率漂移,调用线程只等待发送完毕
      *
      * @param ins           离线音频文件流
      * @param batchSize     每次发送到服务端的数据大小
      * @param sleepInterval 数据发送的间隔，即用于控制发送数据的速率，每次发送batchSize大小的数据后需要sleep的时间
      */
     public void send(InputStream ins, int batchSize, int sleepInterval) {
-        state.checkSend();
-        try {
-            byte[] bytes = new byte[batchSize];
-            int len = 0;
-            long sendInterval;
-            while ((len = ins.read(bytes)) > 0) {
-                if (lastSendTime != -1 && (sendInterval=(System.currentTimeMillis() - lastSendTime)) > 5000) {
-                    logger.warn("too large binary send interval: {} million second",sendInterval);
-                }
-                conn.sendBinary(Arrays.copyOfRange(bytes, 0, len));
-                lastSendTime=System.currentTimeMillis();
-                Thread.sleep(sleepInterval);
-            }
-        } catch (Exception e) {
-            logger.error("fail to send binary,current_task_id:{},state:{}", currentTaskId, state, e);
-            throw new RuntimeException(e);
+        sendPacedAndWait(ins, batchSize, sleepInterval);
+    }
+
+    /**
+     * 离线文件快速发送:以实时码率的speedup倍发送,连接不可写时暂停,即不超过服务端的接收速度
+     *
+     * @param ins     离线音频文件流,发送结束后由调用方关闭
+     * @param speedup 相对实时码率的倍数,小于等于0表示不限速
+     * @return 发送完毕时以吞吐统计成功,{@link ThroughputStats#getSpeedRatio()}为每秒发送的音频秒数
+     */
+    public Future<ThroughputStats> sendFile(InputStream ins, double speedup) {
+        return sendFast(ins, speedup, 0);
+    }
+
+    /**
+     * 离线文件自适应发送:根据服务端返回结果中的处理进度调整速率,已发送的音频领先处理进度越多速率越低,
+     * 领先超过maxLagMillis时降为实时速率
+     *
+     * @param ins          离线音频文件流,发送结束后由调用方关闭
+     * @param maxSpeedup   相对实时码率的最大倍数,小于等于0表示领先未超过maxLagMillis时不限速
+     * @param maxLagMillis 允许领先服务端处理进度的最大音频时长,单位毫秒
+     * @return 发送完毕时以吞吐统计成功
+     */
+    public Future<ThroughputStats> sendFile(InputStream ins, double maxSpeedup, long maxLagMillis) {
+        return sendFast(ins, maxSpeedup, maxLagMillis);
+    }
+
+    /**
+     * 内部调用方法,记录服务端已处理的音频时长
+     *
+     * @param timeMillis
+     */
+    void markProgress(long timeMillis) {
+        if (timeMillis > processedAudioMillis) {
+            processedAudioMillis = timeMillis;
         }
     }
 
@@ -224,46 +288,28 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * 服务端准备好了进行语音转写
      */
     void markTranscriberReady() {
-        state = STATE_REQUEST_CONFIRMED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
+        transitTo(STATE_REQUEST_CONFIRMED);
     }
 
     /**
      * 服务端停止了语音转写
      */
-    void markTranscriberComplete() {
-        state = STATE_COMPLETE;
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+    void markTranscriberComplete(SpeechTranscriberResponse response) {
+        completeTask(response);
     }
 
     /**
      * 服务端返回错误
      */
-    void markFail() {
-        state = STATE_FAIL;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+    void markFail(SpeechTranscriberResponse response) {
+        failTask(response);
     }
 
     /**
      * 内部调用方法
      */
     void markClosed() {
-        state = STATE_CLOSED;
-        if (readyLatch != null) {
-            readyLatch.countDown();
-        }
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+        transitTo(STATE_CLOSED);
     }
 
     /**
@@ -272,10 +318,9 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * @throws Exception
      */
     public void start() throws Exception {
+        checkBlocking("start");
         super.start();
-        completeLatch = new CountDownLatch(1);
-        readyLatch = new CountDownLatch(1);
-        boolean result = readyLatch.await(10, TimeUnit.SECONDS);
+        boolean result = getReadyFuture().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for start confirmation.task_id:%s,state:%s",
                 currentTaskId, state);
@@ -290,15 +335,8 @@ public class SpeechTranscriber extends SpeechReqProtocol {
      * @throws Exception
      */
     public void stop() throws Exception {
-        state.checkStop();
-        SpeechReqProtocol req = new SpeechReqProtocol();
-        req.header.put(Constant.PROP_TASK_ID, currentTaskId);
-        req.header.put(Constant.PROP_NAMESPACE, Constant.VALUE_NAMESPACE_ASR_TRANSCRIPTION);
-        req.header.put(Constant.PROP_NAME, Constant.VALUE_NAME_ASR_TRANSCRIPTION_STOP);
-        req.setAppKey(getAppKey());
-        conn.sendText(req.serialize());
-        state = STATE_STOP_SENT;
-        boolean result = completeLatch.await(10, TimeUnit.SECONDS);
+        checkBlocking("stop");
+        boolean result = stopAsync().await(10, TimeUnit.SECONDS);
         if (!result) {
             String msg = String.format("timeout after 10 seconds waiting for complete confirmation.task_id:%s,state:%s",
                 currentTaskId, state);
@@ -307,6 +345,28 @@ public class SpeechTranscriber extends SpeechReqProtocol {
         }
     }
 
+    /**
+     * 异步结束语音转写:发送结束通知后立即返回,收到TranscriptionCompleted时Future成功,
+     * 收到TaskFailed或连接关闭时Future失败
+     *
+     * @return
+     */
+    public Future<State> stopAsync() {
+        return sendStop(
+            buildCommand(Constant.VALUE_NAMESPACE_ASR_TRANSCRIPTION, Constant.VALUE_NAME_ASR_TRANSCRIPTION_STOP));
+    }
+
+    /**
+     * 当前任务的最终结果:收到TranscriptionCompleted时成功,
+     * 收到TaskFailed时以{@link com.alibaba.nls.client.protocol.SpeechTaskException}失败
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Future<SpeechTranscriberResponse> resultFuture() {
+        return (Future<SpeechTranscriberResponse>)getResultFuture();
+    }
+
     /**
      * 关闭连接
      */
@@ -18,7 +18,6 @@ package com.alibaba.nls.client.protocol.asr;
 
 import java.nio.ByteBuffer;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.transport.ConnectionListener;
 
@@ -32,6 +31,7 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class SpeechTranscriberListener implements ConnectionListener {
     Logger logger = LoggerFactory.getLogger(SpeechTranscriberListener.class);
+    private SpeechTranscriberResponse reusableResponse;
     private SpeechTranscriber transcriber;
 
     public void setSpeechTranscriber(SpeechTranscriber transcriber) {
@@ -42,6 +42,16 @@ public abstract class SpeechTranscriberListener implements ConnectionListener {
         return transcriber;
     }
 
+    /**
+     * 开启后所有回调复用同一个response对象(享元模式),每条消息不再创建新对象.
+     * 此时response只在回调内有效,不能在回调返回后保存或在其它线程中使用
+     *
+     * @param reuse
+     */
+    public void setReuseResponse(boolean reuse) {
+        this.reusableResponse = reuse ? new SpeechTranscriberResponse() : null;
+    }
+
     /**
      * 服务端准备好了进行识别
      *
@@ -111,88 +121,56 @@ public abstract class SpeechTranscriberListener implements ConnectionListener {
             return;
         }
         logger.debug("on message:{}", message);
-        SpeechTranscriberResponse response = JSON.parseObject(message, SpeechTranscriberResponse.class);
-        if (isTranscriptionStarted(response)) {
-            onTranscriberStart(response);
-            transcriber.markTranscriberReady();
-        } else if (isSentenceBegin(response)) {
-            onSentenceBegin(response);
-        } else if (isSentenceEnd(response)) {
-            onSentenceEnd(response);
-        }else if (isNlpResult(response)) {
-            onSentenceSemantics(response);
-        } else if (isTranscriptionResultChanged(response)) {
-            onTranscriptionResultChange(response);
-        } else if (isTranscriptionCompleted(response)) {
-            onTranscriptionComplete(response);
-            transcriber.markTranscriberComplete();
-        } else if (isTaskFailed(response)) {
-            onFail(response);
-            transcriber.markFail();
-        } else {
-            logger.error("can not process this message: {}", message);
-        }
-    }
-
-    @Override
-    public void onMessage(ByteBuffer message) {
-
-    }
-
-    private boolean isTranscriptionStarted(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_TRANSCRIPTION_STARTED)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isSentenceBegin(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_SENTENCE_BEGIN)) {
-            return true;
+        SpeechTranscriberResponse response = reusableResponse;
+        if (response == null) {
+            response = new SpeechTranscriberResponse();
         }
-        return false;
-    }
-
-    private boolean isSentenceEnd(SpeechTranscriberResponse response) {
+        response.bind(message);
         String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_SENTENCE_END)) {
-            return true;
+        if (name == null) {
+            logger.error("can not process this message: {}", message);
+            return;
         }
-        return false;
-    }
-
-    private boolean isNlpResult(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_NLP_RESULT)) {
-            return true;
+        switch (name) {
+            case Constant.VALUE_NAME_ASR_TRANSCRIPTION_STARTED:
+                onTranscriberStart(response);
+                transcriber.markTranscriberReady();
+                break;
+            case Constant.VALUE_NAME_ASR_SENTENCE_BEGIN:
+                onSentenceBegin(response);
+                transcriber.markProgress(response.getTime());
+                break;
+            case Constant.VALUE_NAME_ASR_SENTENCE_END:
+                onSentenceEnd(response);
+                transcriber.markProgress(response.getTime());
+                break;
+            case Constant.VALUE_NAME_ASR_NLP_RESULT:
+                onSentenceSemantics(response);
+                break;
+            case Constant.VALUE_NAME_ASR_TRANSCRIPTION_RESULT_CHANGE:
+                onTranscriptionResultChange(response);
+                transcriber.markProgress(response.getTime());
+                break;
+            case Constant.VALUE_NAME_ASR_TRANSCRIPTION_COMPLETE:
+                onTranscriptionComplete(response);
+                //复用response时为最终结果创建独立的副本,供resultFuture()在回调之外使用
+                transcriber.markTranscriberComplete(
+                    reusableResponse == null ? response : response.copyTo(new SpeechTranscriberResponse()));
+                break;
+            case Constant.VALUE_NAME_TASK_FAILE:
+                onFail(response);
+                transcriber.markFail(response);
+                break;
+            default:
+                logger.error("can not process this message: {}", message);
+                break;
         }
-        return false;
     }
 
-    private boolean isTranscriptionResultChanged(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_TRANSCRIPTION_RESULT_CHANGE)) {
-            return true;
-        }
-        return false;
-    }
 
-    private boolean isTranscriptionCompleted(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_ASR_TRANSCRIPTION_COMPLETE)) {
-            return true;
-        }
-        return false;
-    }
+    @Override
+    public void onMessage(ByteBuffer message) {
 
-    private boolean isTaskFailed(SpeechTranscriberResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_TASK_FAILE)) {
-            return true;
-        }
-        return false;
     }
 
 }
@@ -19,7 +19,6 @@ package com.alibaba.nls.client.protocol.asr;
 import java.util.List;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.nls.client.protocol.SpeechResProtocol;
 
 /**
@@ -30,7 +29,7 @@ import com.alibaba.nls.client.protocol.SpeechResProtocol;
  */
 public class SpeechTranscriberResponse extends SpeechResProtocol {
 
-    static class Word{
+    public static class Word{
         /**
          * 识别结果
          */
@@ -55,7 +54,16 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public Integer getTransSentenceIndex() {
-        return (Integer)payload.get("index");
+        return payload.containsKey("index") ? getIndex() : null;
+    }
+
+    /**
+     * 句子的index,不装箱
+     *
+     * @return 字段不存在时返回-1
+     */
+    public int getIndex() {
+        return (int)readLong(payload, "index", -1);
     }
 
     /**
@@ -64,7 +72,16 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public Integer getTransSentenceTime() {
-        return (Integer)payload.get("time");
+        return payload.containsKey("time") ? (int)getTime() : null;
+    }
+
+    /**
+     * 当前已处理的音频时长,单位毫秒,不装箱
+     *
+     * @return 字段不存在时返回-1
+     */
+    public long getTime() {
+        return readLong(payload, "time", -1);
     }
 
     /**
@@ -73,11 +90,16 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public Double getConfidence() {
-        Object o=payload.get("confidence");
-        if(o!=null){
-            return Double.parseDouble(o.toString());
-        }
-        return null;
+        return payload.containsKey("confidence") ? getConfidenceValue() : null;
+    }
+
+    /**
+     * 结果置信度,不装箱
+     *
+     * @return 字段不存在时返回0
+     */
+    public double getConfidenceValue() {
+        return readDouble(payload, "confidence", 0);
     }
 
     /**
@@ -86,9 +108,17 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public Integer getSentenceBeginTime() {
-        return (Integer)payload.get("begin_time");
+        return payload.containsKey("begin_time") ? (int)getBeginTime() : null;
     }
 
+    /**
+     * 句子的开始时间,单位毫秒,不装箱
+     *
+     * @return 字段不存在时返回-1
+     */
+    public long getBeginTime() {
+        return readLong(payload, "begin_time", -1);
+    }
 
     /**
      * 最终识别结果
@@ -96,7 +126,7 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public String getTransSentenceText() {
-        return (String)payload.get("result");
+        return readString(payload, "result");
     }
 
     /**
@@ -104,9 +134,9 @@ public class SpeechTranscriberResponse extends SpeechResProtocol {
      * @return
      */
     public List<Word> getWords(){
-        JSONArray words=(JSONArray)payload.get("words");
+        String words = readRaw(payload, "words");
         if(words!=null){
-            return JSON.parseArray(words.toString(),Word.class);
+            return JSON.parseArray(words,Word.class);
         }
         return null;
     }
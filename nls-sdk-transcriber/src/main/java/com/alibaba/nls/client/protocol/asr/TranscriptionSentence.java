@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol.asr;
+
+import java.util.List;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * 分段识别合并后的句子,时间均为在整个音频中的位置
+ */
+public class TranscriptionSentence {
+    int index;
+    int segmentIndex;
+    long beginTime;
+    long endTime;
+    String text;
+    double confidence;
+    List<SpeechTranscriberResponse.Word> words;
+
+    /**
+     * 由分段会话的SentenceEnd生成,时间加上分段在整个音频中的偏移
+     *
+     * @param response
+     * @param segmentIndex
+     * @param offsetMillis
+     * @return
+     */
+    static TranscriptionSentence of(SpeechTranscriberResponse response, int segmentIndex, long offsetMillis) {
+        TranscriptionSentence sentence = new TranscriptionSentence();
+        sentence.segmentIndex = segmentIndex;
+        sentence.beginTime = response.getBeginTime() + offsetMillis;
+        sentence.endTime = response.getTime() + offsetMillis;
+        sentence.text = response.getTransSentenceText();
+        sentence.confidence = response.getConfidenceValue();
+        sentence.words = response.getWords();
+        if (sentence.words != null) {
+            for (SpeechTranscriberResponse.Word word : sentence.words) {
+                if (word.startTime != null) {
+                    word.startTime += offsetMillis;
+                }
+                if (word.endTime != null) {
+                    word.endTime += offsetMillis;
+                }
+            }
+        }
+        return sentence;
+    }
+
+    /**
+     * 句子在整个音频中的序号,从1开始
+     *
+     * @return
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 句子所在分段的序号,从0开始
+     *
+     * @return
+     */
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * 句子的开始时间,单位毫秒
+     *
+     * @return
+     */
+    public long getBeginTime() {
+        return beginTime;
+    }
+
+    /**
+     * 句子的结束时间,单位毫秒
+     *
+     * @return
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * 分词结果,仅当enable_words=true时有效
+     *
+     * @return
+     */
+    public List<SpeechTranscriberResponse.Word> getWords() {
+        return words;
+    }
+
+    @Override
+    public String toString() {
+        return JSON.toJSONString(this);
+    }
+}
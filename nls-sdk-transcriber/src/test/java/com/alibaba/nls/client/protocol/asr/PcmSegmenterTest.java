@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 Alibaba Group Holding Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.nls.client.protocol.asr;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PcmSegmenterTest {
+    /**
+     * 8k采样,每帧320字节
+     */
+    private static final int SAMPLE_RATE = 8000;
+    private static final int FRAME_BYTES = SAMPLE_RATE * 2 * PcmSegmenter.FRAME_MILLIS / 1000;
+
+    @Test
+    public void testInvalidSegmentMillis() {
+        long[][] invalid = {{0, 100}, {100, 99}, {100, 100}, {100, 119}};
+        for (long[] millis : invalid) {
+            try {
+                new PcmSegmenter(new ByteArrayInputStream(new byte[0]), SAMPLE_RATE, millis[0], millis[1], 100, 100);
+                fail("min:" + millis[0] + ",max:" + millis[1]);
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+        new PcmSegmenter(new ByteArrayInputStream(new byte[0]), SAMPLE_RATE, 100, 120, 100, 100);
+    }
+
+    @Test
+    public void testMaxLengthWithoutSilence() throws IOException {
+        //1秒没有静音的音频,每段最长6帧,能量相同时从第一个可切分的位置切开
+        byte[] pcm = tone(1000, 1000);
+        List<PcmSegmenter.Segment> segments = split(pcm, 100, 120, 100);
+        assertEquals(9, segments.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, segments.get(i).index);
+            assertEquals(i * 120, segments.get(i).offsetMillis);
+            assertEquals(6 * FRAME_BYTES, segments.get(i).data.length);
+        }
+        assertEquals(2 * FRAME_BYTES, segments.get(8).data.length);
+        assertArrayEquals(pcm, concat(segments));
+    }
+
+    @Test
+    public void testSplitAtSilence() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tone(500, 1000));
+        out.write(new byte[300 * FRAME_BYTES / PcmSegmenter.FRAME_MILLIS]);
+        out.write(tone(500, 1000));
+        byte[] pcm = out.toByteArray();
+        List<PcmSegmenter.Segment> segments = split(pcm, 200, 2000, 100);
+        assertEquals(2, segments.size());
+        //静音开始后5帧判定为静音,从静音的中点切开
+        assertEquals(28 * FRAME_BYTES, segments.get(0).data.length);
+        assertEquals(560, segments.get(1).offsetMillis);
+        assertArrayEquals(pcm, concat(segments));
+    }
+
+    @Test
+    public void testSkipWavHeader() throws IOException {
+        ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        wav.write("RIFF".getBytes("US-ASCII"));
+        writeInt(wav, 36 + 4);
+        wav.write("WAVEfmt ".getBytes("US-ASCII"));
+        writeInt(wav, 16);
+        //pcm,单声道,16000采样,16bit
+        wav.write(new byte[] {1, 0, 1, 0});
+        writeInt(wav, 16000);
+        writeInt(wav, 32000);
+        wav.write(new byte[] {2, 0, 16, 0});
+        wav.write("data".getBytes("US-ASCII"));
+        writeInt(wav, 4);
+        wav.write(new byte[] {1, 2, 3, 4});
+        BufferedInputStream ins = new BufferedInputStream(new ByteArrayInputStream(wav.toByteArray()));
+        assertEquals(16000, PcmSegmenter.skipWavHeader(ins));
+        assertEquals(1, ins.read());
+
+        ins = new BufferedInputStream(new ByteArrayInputStream(new byte[] {5, 6, 7}));
+        assertEquals(-1, PcmSegmenter.skipWavHeader(ins));
+        assertEquals(5, ins.read());
+    }
+
+    private static List<PcmSegmenter.Segment> split(byte[] pcm, long minMillis, long maxMillis, long silenceMillis)
+        throws IOException {
+        PcmSegmenter segmenter = new PcmSegmenter(new ByteArrayInputStream(pcm), SAMPLE_RATE, minMillis, maxMillis,
+            silenceMillis, 100);
+        List<PcmSegmenter.Segment> segments = new ArrayList<PcmSegmenter.Segment>();
+        PcmSegmenter.Segment segment;
+        while ((segment = segmenter.next()) != null) {
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * 幅度为amplitude的方波
+     */
+    private static byte[] tone(int millis, int amplitude) {
+        byte[] pcm = new byte[millis * FRAME_BYTES / PcmSegmenter.FRAME_MILLIS];
+        for (int i = 0; i < pcm.length; i += 2) {
+            int sample = (i / 2) % 2 == 0 ? amplitude : -amplitude;
+            pcm[i] = (byte)sample;
+            pcm[i + 1] = (byte)(sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static byte[] concat(List<PcmSegmenter.Segment> segments) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (PcmSegmenter.Segment segment : segments) {
+            out.write(segment.data);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+}
@@ -17,7 +17,6 @@
 package com.alibaba.nls.client.protocol.tts;
 
 import java.util.HashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.nls.client.protocol.Constant;
@@ -25,7 +24,9 @@ import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.OutputFormatEnum;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
 import com.alibaba.nls.client.protocol.SpeechReqProtocol;
+import com.alibaba.nls.client.transport.Connection;
 
+import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +42,6 @@ import static com.alibaba.nls.client.protocol.SpeechReqProtocol.State.STATE_REQU
 public class SpeechSynthesizer extends SpeechReqProtocol {
     static Logger logger = LoggerFactory.getLogger(SpeechSynthesizer.class);
     private SpeechSynthesizerListener listener;
-    private CountDownLatch completeLatch;
     private boolean isLongText;
 
     /**
@@ -68,6 +68,52 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
         afterConnection(listener);
     }
 
+    /**
+     * 使用已建立的连接创建合成器,conn须是以同一个listener建立的连接,如{@link NlsClient#connectAsync}的结果
+     *
+     * @param conn
+     * @param listener
+     */
+    public SpeechSynthesizer(Connection conn, SpeechSynthesizerListener listener) {
+        this.conn = conn;
+        this.listener = listener;
+        afterConnection(listener);
+    }
+
+    /**
+     * 异步创建合成器:建连不阻塞调用线程,连接建立后Future完成.回调在连接的io线程中执行,
+     * 可在回调中设置参数并调用start,不能调用waitForComplete等待合成结束
+     *
+     * @param client
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechSynthesizer> createAsync(NlsClient client, SpeechSynthesizerListener listener) {
+        return createAsync(client.connectAsync(listener), factory(listener));
+    }
+
+    /**
+     * 使用指定token异步创建合成器
+     *
+     * @param client
+     * @param token
+     * @param listener
+     * @return
+     */
+    public static Future<SpeechSynthesizer> createAsync(NlsClient client, String token,
+        SpeechSynthesizerListener listener) {
+        return createAsync(client.connectAsync(token, listener), factory(listener));
+    }
+
+    private static SessionFactory<SpeechSynthesizer> factory(final SpeechSynthesizerListener listener) {
+        return new SessionFactory<SpeechSynthesizer>() {
+            @Override
+            public SpeechSynthesizer create(Connection conn) {
+                return new SpeechSynthesizer(conn, listener);
+            }
+        };
+    }
+
     protected void afterConnection(SpeechSynthesizerListener listener){
         payload = new HashMap<String, Object>();
         header.put(Constant.PROP_NAMESPACE, TTSConstant.VALUE_NAMESPACE_TTS);
@@ -76,7 +122,7 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
         payload.put(TTSConstant.PROP_TTS_SAMPLE_RATE, DEFAULT_SAMPLE_RATE);
         payload.put(TTSConstant.PROP_TTS_VOLUME, DEFAULT_VOICE_VOLUME);
         listener.setSpeechSynthesizer(this);
-        state = State.STATE_CONNECTED;
+        transitTo(State.STATE_CONNECTED);
 
     }
 
@@ -174,16 +220,23 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
     }
 
     /**
-     * 开始语音合成
-     *
-     * @throws Exception
+     * 开始语音合成,服务端没有开始确认,发送请求后即进入{@link State#STATE_REQUEST_CONFIRMED}
      */
     @Override
-    public void start() throws Exception {
-        super.start();
-        state = STATE_REQUEST_CONFIRMED;
-        completeLatch = new CountDownLatch(1);
-        listener.setCompleteLatch(completeLatch);
+    protected void doStart() {
+        super.doStart();
+        transitTo(STATE_REQUEST_CONFIRMED);
+    }
+
+    /**
+     * 当前任务的最终结果:收到SynthesisCompleted时成功,
+     * 收到TaskFailed时以{@link com.alibaba.nls.client.protocol.SpeechTaskException}失败
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Future<SpeechSynthesizerResponse> resultFuture() {
+        return (Future<SpeechSynthesizerResponse>)getResultFuture();
     }
 
     /**
@@ -193,7 +246,8 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
      * @throws Exception
      */
     public void waitForComplete(int seconds) throws Exception {
-        completeLatch.await(seconds, TimeUnit.SECONDS);
+        checkBlocking("waitForComplete");
+        getCompletionFuture().await(seconds, TimeUnit.SECONDS);
 
     }
 
@@ -203,7 +257,8 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
      * @throws Exception
      */
     public void waitForComplete() throws Exception {
-        completeLatch.await();
+        checkBlocking("waitForComplete");
+        getCompletionFuture().await();
 
     }
 
@@ -214,10 +269,15 @@ public class SpeechSynthesizer extends SpeechReqProtocol {
         conn.close();
     }
 
+    void markComplete(SpeechSynthesizerResponse response) {
+        completeTask(response);
+    }
+
+    void markFail(SpeechSynthesizerResponse response) {
+        failTask(response);
+    }
+
     void markClosed() {
-        state = STATE_CLOSED;
-        if (completeLatch != null) {
-            completeLatch.countDown();
-        }
+        transitTo(STATE_CLOSED);
     }
 }
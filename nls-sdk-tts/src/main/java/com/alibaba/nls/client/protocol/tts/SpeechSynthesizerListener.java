@@ -17,9 +17,7 @@
 package com.alibaba.nls.client.protocol.tts;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.CountDownLatch;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.nls.client.protocol.Constant;
 import com.alibaba.nls.client.transport.ConnectionListener;
 
@@ -33,8 +31,7 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class SpeechSynthesizerListener implements ConnectionListener {
     Logger logger = LoggerFactory.getLogger(SpeechSynthesizerListener.class);
-    private CountDownLatch completeLatch;
-    private CountDownLatch readyLatch;
+    private SpeechSynthesizerResponse reusableResponse;
 
     private SpeechSynthesizer speechSynthesizer;
 
@@ -42,6 +39,16 @@ public abstract class SpeechSynthesizerListener implements ConnectionListener {
         this.speechSynthesizer=speechSynthesizer;
     }
 
+    /**
+     * 开启后所有回调复用同一个response对象(享元模式),每条消息不再创建新对象.
+     * 此时response只在回调内有效,不能在回调返回后保存或在其它线程中使用
+     *
+     * @param reuse
+     */
+    public void setReuseResponse(boolean reuse) {
+        this.reusableResponse = reuse ? new SpeechSynthesizerResponse() : null;
+    }
+
     /**
      * 语音合成结束
      *
@@ -75,17 +82,37 @@ public abstract class SpeechSynthesizerListener implements ConnectionListener {
             return;
         }
         logger.debug("on message:{}", message);
-        SpeechSynthesizerResponse response = JSON.parseObject(message, SpeechSynthesizerResponse.class);
-        if (isComplete(response)) {
-            onComplete(response);
-            completeLatch.countDown();
-        } else if (isTaskFailed(response)) {
-            onFail(response);
-            completeLatch.countDown();
-        } else if (isMetaInfo(response)){
-            onMetaInfo(response);
-        } else {
+        SpeechSynthesizerResponse response = reusableResponse;
+        if (response == null) {
+            response = new SpeechSynthesizerResponse();
+        }
+        response.bind(message);
+        String name = response.getName();
+        if (name == null) {
             logger.warn(message);
+            return;
+        }
+        switch (name) {
+            case TTSConstant.VALUE_NAME_TTS_COMPLETE:
+                onComplete(response);
+                if (speechSynthesizer != null) {
+                    //复用response时为最终结果创建独立的副本,供resultFuture()在回调之外使用
+                    speechSynthesizer.markComplete(
+                        reusableResponse == null ? response : response.copyTo(new SpeechSynthesizerResponse()));
+                }
+                break;
+            case Constant.VALUE_NAME_TASK_FAILE:
+                onFail(response);
+                if (speechSynthesizer != null) {
+                    speechSynthesizer.markFail(response);
+                }
+                break;
+            case TTSConstant.VALUE_NAME_TTS_META_INFO:
+                onMetaInfo(response);
+                break;
+            default:
+                logger.warn(message);
+                break;
         }
 
     }
@@ -100,32 +127,4 @@ public abstract class SpeechSynthesizerListener implements ConnectionListener {
     abstract public void onMessage(ByteBuffer message);
 
 
-    private boolean isComplete(SpeechSynthesizerResponse response) {
-        String name = response.getName();
-        if (name.equals(TTSConstant.VALUE_NAME_TTS_COMPLETE)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isTaskFailed(SpeechSynthesizerResponse response) {
-        String name = response.getName();
-        if (name.equals(Constant.VALUE_NAME_TASK_FAILE)) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean isMetaInfo(SpeechSynthesizerResponse response) {
-        String name = response.getName();
-        if (name.equals("MetaInfo")) {
-            return true;
-        }
-        return false;
-    }
-
-    public void setCompleteLatch(CountDownLatch latch) {
-        completeLatch = latch;
-    }
-
 }
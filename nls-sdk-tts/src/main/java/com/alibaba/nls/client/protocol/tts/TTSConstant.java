@@ -34,4 +34,5 @@ public class TTSConstant {
     public static final String VALUE_NAME_TTS_START = "StartSynthesis";
     public static final String VALUE_NAME_TTS_STARTED = "SynthesisStarted";
     public static final String VALUE_NAME_TTS_COMPLETE = "SynthesisCompleted";
+    public static final String VALUE_NAME_TTS_META_INFO = "MetaInfo";
 }